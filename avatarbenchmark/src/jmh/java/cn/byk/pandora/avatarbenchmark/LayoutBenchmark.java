@@ -0,0 +1,73 @@
+package cn.byk.pandora.avatarbenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+
+import cn.byk.pandora.avatarlayout.LayoutBuffer;
+import cn.byk.pandora.avatarlayout.LayoutResult;
+import cn.byk.pandora.avatarlayout.LayoutTile;
+import cn.byk.pandora.avatarlayout.QQLayoutEngine;
+import cn.byk.pandora.avatarlayout.WeChatLayoutEngine;
+
+/**
+ * QQ和微信群组布局计算, 覆盖1到9个子元素. QQ布局最多5个, 超出部分按5个计算. *Memo为经过全局缓存的查询
+ */
+@State(Scope.Thread)
+public class LayoutBenchmark {
+
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9"})
+    public int count;
+
+    @Param({"144", "300"})
+    public int side;
+
+    private QQLayoutEngine mQQEngine;
+    private WeChatLayoutEngine mWeChatEngine;
+
+    private final LayoutBuffer mBuffer = new LayoutBuffer();
+
+    @Setup
+    public void setup() {
+        mQQEngine = new QQLayoutEngine();
+        mWeChatEngine = new WeChatLayoutEngine(3f);
+    }
+
+    @Benchmark
+    public ArrayList<LayoutTile> qq() {
+        return mQQEngine.calculate(side, side, count);
+    }
+
+    @Benchmark
+    public ArrayList<LayoutTile> weChat() {
+        return mWeChatEngine.calculate(side, side, count);
+    }
+
+    @Benchmark
+    public LayoutResult qqMemo() {
+        return mQQEngine.layout(side, side, count);
+    }
+
+    @Benchmark
+    public LayoutResult weChatMemo() {
+        return mWeChatEngine.layout(side, side, count);
+    }
+
+    @Benchmark
+    public LayoutBuffer qqInto() {
+        mQQEngine.layout(side, side, count)
+                 .copyTo(mBuffer);
+        return mBuffer;
+    }
+
+    @Benchmark
+    public LayoutBuffer weChatInto() {
+        mWeChatEngine.layout(side, side, count)
+                     .copyTo(mBuffer);
+        return mBuffer;
+    }
+}
@@ -0,0 +1,55 @@
+package cn.byk.pandora.avatarbenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cn.byk.pandora.avatarlayout.ScaleMan;
+
+/**
+ * 采样率和缩放偏移的计算, 横图, 竖图, 正方形图各一组
+ */
+@State(Scope.Thread)
+public class ScaleBenchmark {
+
+    @Param({"4032x3024", "1080x1920", "640x640"})
+    public String source;
+
+    private int mWidth;
+    private int mHeight;
+
+    private final float[] mValues = new float[3];
+
+    @Setup
+    public void setup() {
+        int split = source.indexOf('x');
+        mWidth = Integer.parseInt(source.substring(0, split));
+        mHeight = Integer.parseInt(source.substring(split + 1));
+    }
+
+    @Benchmark
+    public int inSampleSize() {
+        return ScaleMan.calculateInSampleSize(mWidth, mHeight, 144, 144);
+    }
+
+    @Benchmark
+    public void cropSquare(Blackhole blackhole) {
+        ScaleMan.cropSquare(mWidth, mHeight, 72, 72, mValues);
+        blackhole.consume(mValues);
+    }
+
+    @Benchmark
+    public void centerCrop(Blackhole blackhole) {
+        ScaleMan.centerCrop(mWidth, mHeight, 144, 96, mValues);
+        blackhole.consume(mValues);
+    }
+
+    @Benchmark
+    public void centerInside(Blackhole blackhole) {
+        ScaleMan.centerInside(mWidth, mHeight, 144, 144, mValues);
+        blackhole.consume(mValues);
+    }
+}
@@ -0,0 +1,28 @@
+package cn.byk.pandora.avatarlayout;
+
+import java.util.ArrayList;
+
+/**
+ * 多个图片时布局排列的位置计算接口, 与控件无关, 可以在JVM上直接运行
+ */
+public interface ILayoutEngine {
+
+    /**
+     * 布局measure排列计算方法, 具体规则由子类实现
+     *
+     * @param viewWidth  控件的宽
+     * @param viewHeight 控件的高
+     * @param viewNum    控件图片的数量
+     * @return 返回一个信息集合
+     */
+    ArrayList<LayoutTile> calculate(int viewWidth, int viewHeight, int viewNum);
+
+    /**
+     * 获取不可修改的布局结果, 相同参数的结果在全局缓存中共享, 只在第一次时计算
+     *
+     * @param viewWidth  控件的宽
+     * @param viewHeight 控件的高
+     * @param viewNum    控件图片的数量
+     */
+    LayoutResult layout(int viewWidth, int viewHeight, int viewNum);
+}
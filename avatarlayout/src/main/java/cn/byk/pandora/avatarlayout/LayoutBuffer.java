@@ -0,0 +1,89 @@
+package cn.byk.pandora.avatarlayout;
+
+/**
+ * 可复用的布局结果缓冲区, 每个子元素按 x, y, 宽, 高 四个int连续存放. 容量不足时才扩容, 反复计算时不创建对象
+ */
+public class LayoutBuffer {
+
+    private static final int STRIDE = 4;
+
+    private int[] mData;
+    private int mSize;
+
+    public LayoutBuffer() {
+        this(9);
+    }
+
+    public LayoutBuffer(int capacity) {
+        mData = new int[Math.max(1, capacity) * STRIDE];
+    }
+
+    /**
+     * 清空并预留count个子元素的空间
+     */
+    public void reset(int count) {
+        int length = count * STRIDE;
+        if (mData.length < length) {
+            mData = new int[length];
+        }
+        mSize = 0;
+    }
+
+    public void add(int x, int y, int width, int height) {
+        int base = mSize * STRIDE;
+        if (mData.length < base + STRIDE) {
+            int[] data = new int[mData.length * 2];
+            System.arraycopy(mData, 0, data, 0, mData.length);
+            mData = data;
+        }
+        mData[base] = x;
+        mData[base + 1] = y;
+        mData[base + 2] = width;
+        mData[base + 3] = height;
+        mSize++;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getX(int index) {
+        return mData[index * STRIDE];
+    }
+
+    public int getY(int index) {
+        return mData[index * STRIDE + 1];
+    }
+
+    public int getWidth(int index) {
+        return mData[index * STRIDE + 2];
+    }
+
+    public int getHeight(int index) {
+        return mData[index * STRIDE + 3];
+    }
+
+    /**
+     * 复制另一个缓冲区的内容
+     */
+    public void set(LayoutBuffer other) {
+        reset(other.mSize);
+        System.arraycopy(other.mData, 0, mData, 0, other.mSize * STRIDE);
+        mSize = other.mSize;
+    }
+
+    /**
+     * 内容是否与另一个缓冲区相同
+     */
+    public boolean contentEquals(LayoutBuffer other) {
+        if (other == null || other.mSize != mSize) {
+            return false;
+        }
+        for (int i = 0, length = mSize * STRIDE; i < length; i++) {
+            if (mData[i] != other.mData[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,102 @@
+package cn.byk.pandora.avatarlayout;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 全局共享的布局结果缓存, 以 布局类型, 宽, 高, 数量, 空隙, 屏幕密度 为key. 结果不可修改, 可以被多个控件和线程同时使用.
+ * 查询时复用线程内的key对象, 命中时不创建对象
+ */
+public class LayoutMemo {
+
+    public static final int TYPE_QQ = 1;
+    public static final int TYPE_WECHAT = 2;
+    public static final int TYPE_GRID = 3;
+    public static final int TYPE_RING = 4;
+    public static final int TYPE_PACKED = 5;
+
+    /**
+     * 缓存条目上限, 超出时整体清空. 正常使用时尺寸和数量的组合很少, 不会触发
+     */
+    private static final int MAX_ENTRIES = 256;
+
+    private static final ConcurrentHashMap<Key, LayoutResult> sResults = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Key> PROBE = new ThreadLocal<Key>() {
+        @Override
+        protected Key initialValue() {
+            return new Key();
+        }
+    };
+
+    public static LayoutResult get(int type, int width, int height, int count, float spacing, float density) {
+        Key probe = PROBE.get();
+        probe.set(type, width, height, count, spacing, density);
+        return sResults.get(probe);
+    }
+
+    /**
+     * 存入计算结果, 已经有其他线程存入时返回已有的结果
+     */
+    public static LayoutResult put(int type, int width, int height, int count, float spacing, float density,
+                                   LayoutResult result) {
+        if (sResults.size() >= MAX_ENTRIES) {
+            sResults.clear();
+        }
+
+        Key key = new Key();
+        key.set(type, width, height, count, spacing, density);
+        LayoutResult exist = sResults.putIfAbsent(key, result);
+        return exist != null ? exist : result;
+    }
+
+    public static void clear() {
+        sResults.clear();
+    }
+
+    public static int size() {
+        return sResults.size();
+    }
+
+    private static final class Key {
+
+        int type;
+        int width;
+        int height;
+        int count;
+        int spacingBits;
+        int densityBits;
+
+        void set(int type, int width, int height, int count, float spacing, float density) {
+            this.type = type;
+            this.width = width;
+            this.height = height;
+            this.count = count;
+            spacingBits = Float.floatToIntBits(spacing);
+            densityBits = Float.floatToIntBits(density);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return type == key.type && width == key.width && height == key.height && count == key.count
+                    && spacingBits == key.spacingBits && densityBits == key.densityBits;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = type;
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + count;
+            result = 31 * result + spacingBits;
+            result = 31 * result + densityBits;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package cn.byk.pandora.avatarlayout;
+
+import java.util.List;
+
+/**
+ * 不可修改的布局结果, 可以在多个控件和线程之间共享. 每个子元素按 宽, 高, 左, 上, 右, 下 顺序存放
+ */
+public final class LayoutResult {
+
+    private static final int STRIDE = 6;
+
+    private final int[] mData;
+
+    LayoutResult(int[] data) {
+        mData = data;
+    }
+
+    public static LayoutResult of(List<LayoutTile> tiles) {
+        int[] data = new int[tiles.size() * STRIDE];
+        for (int i = 0, size = tiles.size(); i < size; i++) {
+            LayoutTile tile = tiles.get(i);
+            int base = i * STRIDE;
+            data[base] = tile.innerWidth;
+            data[base + 1] = tile.innerHeight;
+            data[base + 2] = tile.left;
+            data[base + 3] = tile.top;
+            data[base + 4] = tile.right;
+            data[base + 5] = tile.bottom;
+        }
+        return new LayoutResult(data);
+    }
+
+    public int size() {
+        return mData.length / STRIDE;
+    }
+
+    public int getInnerWidth(int index) {
+        return mData[index * STRIDE];
+    }
+
+    public int getInnerHeight(int index) {
+        return mData[index * STRIDE + 1];
+    }
+
+    public int getLeft(int index) {
+        return mData[index * STRIDE + 2];
+    }
+
+    public int getTop(int index) {
+        return mData[index * STRIDE + 3];
+    }
+
+    public int getRight(int index) {
+        return mData[index * STRIDE + 4];
+    }
+
+    public int getBottom(int index) {
+        return mData[index * STRIDE + 5];
+    }
+
+    /**
+     * 把所有子元素的位置和宽高写入缓冲区
+     */
+    public void copyTo(LayoutBuffer out) {
+        int size = size();
+        out.reset(size);
+        for (int i = 0; i < size; i++) {
+            int base = i * STRIDE;
+            out.add(mData[base + 2], mData[base + 3], mData[base], mData[base + 1]);
+        }
+    }
+
+    /**
+     * 把第index个子元素复制到调用者的对象上
+     */
+    public LayoutTile copyTo(int index, LayoutTile tile) {
+        int base = index * STRIDE;
+        tile.innerWidth = mData[base];
+        tile.innerHeight = mData[base + 1];
+        tile.left = mData[base + 2];
+        tile.top = mData[base + 3];
+        tile.right = mData[base + 4];
+        tile.bottom = mData[base + 5];
+        return tile;
+    }
+}
@@ -0,0 +1,34 @@
+package cn.byk.pandora.avatarlayout;
+
+/**
+ * 单个子元素的布局信息, 只使用基本类型, 不依赖Android
+ */
+public class LayoutTile {
+
+    /**
+     * 组合头像时, 每个单独元素可分配的最大宽高
+     */
+    public int innerWidth;
+    public int innerHeight;
+
+    /**
+     * 每个单独元素,左上点和右下点.   可规划区域
+     */
+    public int left;
+    public int top;
+    public int right;
+    public int bottom;
+
+    public void set(int left, int top, int right, int bottom, int side) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        innerWidth = innerHeight = side;
+    }
+
+    public void reset() {
+        left = top = right = bottom = 0;
+        innerWidth = innerHeight = 0;
+    }
+}
@@ -0,0 +1,262 @@
+package cn.byk.pandora.avatarlayout;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 任意数量子元素的参数化布局, 支持网格, 环形, 蜂窝密排三种排列
+ * <p>
+ * 每种排列和数量只在第一次时计算单位尺寸的模板(中心点和边长), 之后按控件边长缩放平移, 计算量为O(N), 不为每个子元素创建对象
+ */
+public class ParametricLayoutEngine implements ILayoutEngine {
+
+    /**
+     * 网格排列, 列数为 ceil(sqrt(N)), 不满的一行放在最上面并居中, 如16个为4x4, 25个为5x5
+     */
+    public static final int MODE_GRID = 0;
+
+    /**
+     * 环形排列, 所有子元素等大并相切地排在一个圆上, 从正上方开始顺时针
+     */
+    public static final int MODE_RING = 1;
+
+    /**
+     * 蜂窝密排, 中心一个, 向外每圈6k个, 按圈从内向外填充
+     */
+    public static final int MODE_PACKED = 2;
+
+    /**
+     * 模板中每个子元素的数据: 中心x, 中心y, 边长, 都以正方形边长为单位
+     */
+    private static final int TEMPLATE_STRIDE = 3;
+
+    /**
+     * 布局结果中每个子元素的数据: 宽, 高, 左, 上, 右, 下
+     */
+    private static final int RESULT_STRIDE = 6;
+
+    private static final ConcurrentHashMap<Long, float[]> sTemplates = new ConcurrentHashMap<>();
+
+    private final int mMode;
+
+    /**
+     * 屏幕密度, 空隙从dp转换为像素时使用
+     */
+    private float mDensity;
+
+    /**
+     * 子元素的空隙, 单位dp
+     */
+    private float mSpacing = 1f;
+
+    public ParametricLayoutEngine(int mode, float density) {
+        if (mode != MODE_GRID && mode != MODE_RING && mode != MODE_PACKED) {
+            throw new IllegalArgumentException("不支持的排列方式: " + mode);
+        }
+        mMode = mode;
+        mDensity = density;
+    }
+
+    @Override
+    public ArrayList<LayoutTile> calculate(int viewWidth, int viewHeight, int viewNum) {
+        LayoutResult result = layout(viewWidth, viewHeight, viewNum);
+
+        ArrayList<LayoutTile> tiles = new ArrayList<>(result.size());
+        for (int i = 0, size = result.size(); i < size; i++) {
+            tiles.add(result.copyTo(i, new LayoutTile()));
+        }
+        return tiles;
+    }
+
+    @Override
+    public LayoutResult layout(int viewWidth, int viewHeight, int viewNum) {
+        if (viewNum < 1) {
+            throw new UnsupportedOperationException("不支持操作异常");
+        }
+
+        int type = memoType();
+        float spacing = mSpacing;
+        float density = mDensity;
+        LayoutResult result = LayoutMemo.get(type, viewWidth, viewHeight, viewNum, spacing, density);
+        if (result == null) {
+            int[] data = new int[viewNum * RESULT_STRIDE];
+            fill(template(mMode, viewNum), viewWidth, viewHeight, viewNum, spacing, density, data);
+            result = LayoutMemo.put(type, viewWidth, viewHeight, viewNum, spacing, density, new LayoutResult(data));
+        }
+        return result;
+    }
+
+    /**
+     * 按控件尺寸缩放平移模板, 结果写入data
+     */
+    private static void fill(float[] template, int viewWidth, int viewHeight, int viewNum, float spacing,
+                             float density, int[] data) {
+        // 容错控件非正方形场景处理, 在正方形内布局并居中
+        int side = Math.min(viewWidth, viewHeight);
+        int layoutOffsetX = (viewWidth - side) >> 1;
+        int layoutOffsetY = (viewHeight - side) >> 1;
+
+        int addPixel = spacing > 0 ? (int) WeChatLayoutEngine.dip2px(density, spacing) : 0;
+
+        for (int i = 0; i < viewNum; i++) {
+            int t = i * TEMPLATE_STRIDE;
+            int tileSide = (int) (template[t + 2] * side);
+            int left = (int) (template[t] * side - tileSide / 2f) + layoutOffsetX;
+            int top = (int) (template[t + 1] * side - tileSide / 2f) + layoutOffsetY;
+
+            // 每个子元素的空隙不得超出子元素边长的三分之一
+            int pad = Math.min(addPixel, tileSide / 3);
+            int inner = tileSide - 2 * pad;
+
+            int r = i * RESULT_STRIDE;
+            data[r] = inner;
+            data[r + 1] = inner;
+            data[r + 2] = left + pad;
+            data[r + 3] = top + pad;
+            data[r + 4] = left + tileSide - pad;
+            data[r + 5] = top + tileSide - pad;
+        }
+    }
+
+    /**
+     * 获取单位尺寸的模板, 每种排列和数量只计算一次
+     */
+    private static float[] template(int mode, int count) {
+        Long key = ((long) count << 2) | mode;
+        float[] template = sTemplates.get(key);
+        if (template == null) {
+            template = new float[count * TEMPLATE_STRIDE];
+            switch (mode) {
+                case MODE_RING:
+                    ring(count, template);
+                    break;
+                case MODE_PACKED:
+                    packed(count, template);
+                    break;
+                default:
+                    grid(count, template);
+                    break;
+            }
+            float[] exist = sTemplates.putIfAbsent(key, template);
+            if (exist != null) {
+                template = exist;
+            }
+        }
+        return template;
+    }
+
+    private static void grid(int count, float[] out) {
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        int rows = (count + columns - 1) / columns;
+        float cell = 1f / columns;
+
+        // 整体垂直居中, 不满的一行放在最上面并水平居中
+        float top = (1f - rows * cell) / 2;
+        int firstRow = count - (rows - 1) * columns;
+        int index = 0;
+        for (int row = 0; row < rows; row++) {
+            int inRow = row == 0 ? firstRow : columns;
+            float left = (1f - inRow * cell) / 2;
+            for (int column = 0; column < inRow; column++) {
+                put(out, index++, left + (column + 0.5f) * cell, top + (row + 0.5f) * cell, cell);
+            }
+        }
+    }
+
+    private static void ring(int count, float[] out) {
+        if (count == 1) {
+            put(out, 0, 0.5f, 0.5f, 1f);
+            return;
+        }
+
+        // 相邻子元素相切: 直径 d = 2R * sin(PI / N), 并且 R + d / 2 = 0.5
+        double sin = Math.sin(Math.PI / count);
+        double radius = 0.5 / (1 + sin);
+        float diameter = (float) (2 * radius * sin);
+        double step = 2 * Math.PI / count;
+        for (int i = 0; i < count; i++) {
+            double angle = i * step - Math.PI / 2;
+            put(out, i, (float) (0.5 + radius * Math.cos(angle)), (float) (0.5 + radius * Math.sin(angle)), diameter);
+        }
+    }
+
+    private static void packed(int count, float[] out) {
+        // 圈数k满足 1 + 3k(k + 1) >= N, 最外圈的边缘刚好到达正方形边界
+        int rings = 0;
+        while (1 + 3 * rings * (rings + 1) < count) {
+            rings++;
+        }
+        float diameter = 1f / (2 * rings + 1);
+
+        put(out, 0, 0.5f, 0.5f, diameter);
+        int index = 1;
+        for (int ring = 1; ring <= rings && index < count; ring++) {
+            // 六边形的6条边, 每条边ring个位置, 从正上方的顶点开始顺时针
+            for (int edge = 0; edge < 6 && index < count; edge++) {
+                double a0 = Math.PI / 3 * edge - Math.PI / 2;
+                double a1 = a0 + Math.PI / 3;
+                double x0 = Math.cos(a0) * ring;
+                double y0 = Math.sin(a0) * ring;
+                double x1 = Math.cos(a1) * ring;
+                double y1 = Math.sin(a1) * ring;
+                for (int step = 0; step < ring && index < count; step++) {
+                    double t = (double) step / ring;
+                    float cx = (float) (0.5 + (x0 + (x1 - x0) * t) * diameter);
+                    float cy = (float) (0.5 + (y0 + (y1 - y0) * t) * diameter);
+                    put(out, index++, cx, cy, diameter);
+                }
+            }
+        }
+    }
+
+    private static void put(float[] out, int index, float centerX, float centerY, float side) {
+        int base = index * TEMPLATE_STRIDE;
+        out[base] = centerX;
+        out[base + 1] = centerY;
+        out[base + 2] = side;
+    }
+
+    private int memoType() {
+        switch (mMode) {
+            case MODE_RING:
+                return LayoutMemo.TYPE_RING;
+            case MODE_PACKED:
+                return LayoutMemo.TYPE_PACKED;
+            default:
+                return LayoutMemo.TYPE_GRID;
+        }
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    public float getDensity() {
+        return mDensity;
+    }
+
+    /**
+     * 设置屏幕密度, 用于把dp单位的空隙转换为像素
+     */
+    public void setDensity(float density) {
+        mDensity = density;
+    }
+
+    /**
+     * 获取子元素的空隙
+     *
+     * @return 返回单位dp
+     */
+    public float getSpacing() {
+        return mSpacing;
+    }
+
+    /**
+     * 设置子元素间的空隙
+     *
+     * @param spacing 单位dp
+     */
+    public void setSpacing(float spacing) {
+        mSpacing = spacing;
+    }
+}
@@ -0,0 +1,319 @@
+package cn.byk.pandora.avatarlayout;
+
+import java.util.ArrayList;
+
+/**
+ * QQ 群组布局排列的计算, 从QQLayoutManager中移出, 不依赖Android
+ */
+public class QQLayoutEngine implements ILayoutEngine {
+
+    /**
+     * 针对图片的数量, 对应的图片处理的配置系数
+     */
+    public static final float[][] SIZES =
+            {new float[]{0.9f, 0.9f}, new float[]{0.5f, 0.65f}, new float[]{0.45f, 0.8f}, new float[]{0.45f, 0.91f},
+                    new float[]{0.38f, 0.80f}};
+
+    public static final int MAX_NUM = 5;
+
+    /**
+     * 五边形布局用到的三角函数值, 类加载时计算一次, 计算方式与原来逐次调用时一致, 结果不变
+     */
+    private static final double COS_19 = Math.cos(19 * Math.PI / 180);
+    private static final double SIN_18 = Math.sin(18 * Math.PI / 180);
+    private static final double COS_54 = Math.cos(54 * Math.PI / 180);
+    private static final double SIN_54 = Math.sin(54 * Math.PI / 180);
+
+    /**
+     * 计算过程中存放坐标的数组, 每个线程复用
+     */
+    private static final ThreadLocal<float[]> OFFSETS = new ThreadLocal<float[]>() {
+        @Override
+        protected float[] initialValue() {
+            return new float[MAX_NUM * 2];
+        }
+    };
+
+    /**
+     * {@link #calculate}转换为集合前使用的缓冲区, 每个线程复用
+     */
+    private static final ThreadLocal<LayoutBuffer> BUFFER = new ThreadLocal<LayoutBuffer>() {
+        @Override
+        protected LayoutBuffer initialValue() {
+            return new LayoutBuffer(MAX_NUM);
+        }
+    };
+
+    @Override
+    public ArrayList<LayoutTile> calculate(int viewWidth, int viewHeight, int viewNum) {
+        LayoutBuffer buffer = BUFFER.get();
+        calculateInto(viewWidth, viewHeight, viewNum, buffer);
+
+        ArrayList<LayoutTile> tiles = new ArrayList<>(buffer.size());
+        for (int i = 0, size = buffer.size(); i < size; i++) {
+            LayoutTile tile = new LayoutTile();
+            tile.left = buffer.getX(i);
+            tile.top = buffer.getY(i);
+            tile.innerWidth = buffer.getWidth(i);
+            tile.innerHeight = buffer.getHeight(i);
+            tiles.add(tile);
+        }
+        return tiles;
+    }
+
+    /**
+     * 计算结果直接写入调用者的缓冲区, 容量足够时不创建任何对象. 结果与{@link #calculate}相同
+     *
+     * @param viewWidth  控件的宽
+     * @param viewHeight 控件的高
+     * @param viewNum    控件图片的数量, 超过{@link #MAX_NUM}时按上限计算
+     * @param out        接收结果的缓冲区, 原有内容会被清空
+     */
+    public void calculateInto(int viewWidth, int viewHeight, int viewNum, LayoutBuffer out) {
+        if (viewNum > MAX_NUM) {
+            viewNum = MAX_NUM;
+        } else if (viewNum < 1) {
+            throw new UnsupportedOperationException("不支持操作异常");
+        }
+
+        // 容错控件非正方形场景处理
+        int layoutOffsetX = 0;
+        int layoutOffsetY = 0;
+        int layoutSquareSide;       // 正方形边长
+        if (viewWidth != viewHeight) {
+            int temp = viewHeight - viewWidth;
+            if (temp > 0) {
+                layoutOffsetY += temp;
+                layoutOffsetY >>= 1;
+                layoutSquareSide = viewWidth;
+            } else {
+                layoutOffsetX -= temp;
+                layoutOffsetX >>= 1;
+                layoutSquareSide = viewHeight;
+            }
+        } else {
+            layoutSquareSide = viewWidth;
+        }
+
+        // 获得对应缩放系数集合
+        float[] size = SIZES[viewNum - 1];
+
+        // 一次得到所有左上角坐标顶点
+        float[] offsets = OFFSETS.get();
+        offsets(viewNum, layoutSquareSide, size, offsets);
+
+        // 计算各个子元素的位置
+        int side = (int) (layoutSquareSide * size[0]);
+        out.reset(viewNum);
+        for (int i = 0; i < viewNum; i++) {
+            out.add((int) offsets[i * 2] + layoutOffsetX, (int) offsets[i * 2 + 1] + layoutOffsetY, side, side);
+        }
+    }
+
+    @Override
+    public LayoutResult layout(int viewWidth, int viewHeight, int viewNum) {
+        LayoutResult result = LayoutMemo.get(LayoutMemo.TYPE_QQ, viewWidth, viewHeight, viewNum, 0, 0);
+        if (result == null) {
+            result = LayoutMemo.put(LayoutMemo.TYPE_QQ, viewWidth, viewHeight, viewNum, 0, 0,
+                                    LayoutResult.of(calculate(viewWidth, viewHeight, viewNum)));
+        }
+        return result;
+    }
+
+    /**
+     * 根据个数选择具体实现的布局排放
+     *
+     * @param count     个数
+     * @param index     下标
+     * @param dimension 画布边长（正方形）
+     * @param size      size[0]缩放 size[1]边距
+     * @return 下标index的左上角X，Y轴坐标
+     */
+    public static float[] offset(int count, int index, float dimension, float[] size) {
+        return offset(count, index, dimension, size, new float[2]);
+    }
+
+    /**
+     * 与{@link #offset(int, int, float, float[])}相同, 坐标写入调用者的数组, 不创建对象
+     *
+     * @param out 长度至少为2, 依次写入X, Y
+     * @return out
+     */
+    public static float[] offset(int count, int index, float dimension, float[] size, float[] out) {
+        if (count < 1 || count > MAX_NUM || index < 0 || index >= count) {
+            out[0] = 0f;
+            out[1] = 0f;
+            return out;
+        }
+
+        float[] offsets = OFFSETS.get();
+        offsets(count, dimension, size, offsets);
+        out[0] = offsets[index * 2];
+        out[1] = offsets[index * 2 + 1];
+        return out;
+    }
+
+    /**
+     * 一次计算所有子元素的左上角坐标, 依次写入 x0, y0, x1, y1 ...
+     *
+     * @param count     个数, 1~5
+     * @param dimension 画布边长（正方形）
+     * @param size      size[0]缩放 size[1]边距
+     * @param out       长度至少为count * 2
+     */
+    public static void offsets(int count, float dimension, float[] size, float[] out) {
+        switch (count) {
+            case 1:
+                offset1(dimension, out);
+                break;
+            case 2:
+                offset2(dimension, size, out);
+                break;
+            case 3:
+                offset3(dimension, size, out);
+                break;
+            case 4:
+                offset4(dimension, size, out);
+                break;
+            case 5:
+                offset5(dimension, size, out);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void offset1(float dimension, float[] out) {
+        // 圆的直径
+        float cd = dimension * 0.9f;
+        float offset = (dimension - cd) / 2;
+        out[0] = offset;
+        out[1] = offset;
+    }
+
+    /**
+     * 5个头像
+     */
+    private static void offset5(float dimension, float[] size, float[] out) {
+        // 圆的直径
+        float cd = dimension * size[0];
+        // 边距
+        float s1 = -cd * size[1];
+
+        float x1 = 0;
+        float y1 = s1;
+
+        float x2 = (float) (s1 * COS_19);
+        float y2 = (float) (s1 * SIN_18);
+
+        float x3 = (float) (s1 * COS_54);
+        float y3 = (float) (-s1 * SIN_54);
+
+        float x4 = (float) (-s1 * COS_54);
+        float y4 = (float) (-s1 * SIN_54);
+
+        float x5 = (float) (-s1 * COS_19);
+        float y5 = (float) (s1 * SIN_18);
+
+        // 居中 Y轴偏移量
+        float xx1 = (dimension - cd - y3 - s1) / 2;
+        // 居中 X轴偏移量
+        float xxc1 = (dimension - cd) / 2;
+
+        out[0] = x1 + xxc1;
+        out[1] = y1 + xx1;
+        out[2] = x2 + xxc1;
+        out[3] = y2 + xx1;
+        out[4] = x3 + xxc1;
+        out[5] = y3 + xx1;
+        out[6] = x4 + xxc1;
+        out[7] = y4 + xx1;
+        out[8] = x5 + xxc1;
+        out[9] = y5 + xx1;
+    }
+
+    /**
+     * 4个头像
+     */
+    private static void offset4(float dimension, float[] size, float[] out) {
+        // 圆的直径
+        float cd = dimension * size[0];
+        // 边距
+        float s1 = cd * size[1];
+
+        float x1 = 0;
+        float y1 = 0;
+
+        float x2 = s1;
+        float y2 = y1;
+
+        float x3 = s1;
+        float y3 = s1;
+
+        float x4 = x1;
+        float y4 = y3;
+
+        // 居中 X轴偏移量
+        float xx1 = (dimension - cd - s1) / 2;
+
+        out[0] = x1 + xx1;
+        out[1] = y1 + xx1;
+        out[2] = x2 + xx1;
+        out[3] = y2 + xx1;
+        out[4] = x3 + xx1;
+        out[5] = y3 + xx1;
+        out[6] = x4 + xx1;
+        out[7] = y4 + xx1;
+    }
+
+    /**
+     * 3个头像
+     */
+    private static void offset3(float dimension, float[] size, float[] out) {
+        // 圆的直径
+        float cd = dimension * size[0];
+        // 边距
+        float s1 = cd * size[1];
+        // 第二个圆的 Y坐标
+        float y2 = s1 * (3 / 2);
+        // 第二个圆的 X坐标
+        float x2 = s1 - y2 / 1.73205f;
+        // 第三个圆的 X坐标
+        float x3 = s1 * 2 - x2;
+        // 居中 Y轴偏移量
+        float xx1 = (dimension - cd - y2) / 2;
+        // 居中 X轴偏移量
+        float xxc1 = (dimension - cd) / 2 - s1;
+
+        out[0] = s1 + xxc1;
+        out[1] = xx1;
+        out[2] = x2 + xxc1;
+        out[3] = y2 + xx1;
+        out[4] = x3 + xxc1;
+        out[5] = y2 + xx1;
+    }
+
+    /**
+     * 2个头像
+     */
+    private static void offset2(float dimension, float[] size, float[] out) {
+        // 圆的直径
+        float cd = dimension * size[0];
+        // 边距
+        float s1 = cd * size[1];
+
+        float x1 = 0;
+        float y1 = 0;
+
+        float x2 = s1;
+        float y2 = s1;
+
+        // 从控件左边开始计算 X轴偏移量
+        float xx1 = (dimension - cd - s1) / 2;
+
+        out[0] = x1 + xx1;
+        out[1] = y1 + xx1;
+        out[2] = x2 + xx1;
+        out[3] = y2 + xx1;
+    }
+}
@@ -0,0 +1,160 @@
+package cn.byk.pandora.avatarlayout;
+
+/**
+ * 图片采样率和缩放偏移的计算, 不依赖Android, 结果写入调用者提供的数组, 不创建对象
+ */
+public class ScaleMan {
+
+    /**
+     * 结果数组中缩放比例的下标
+     */
+    public static final int SCALE = 0;
+
+    /**
+     * 结果数组中x, y偏移的下标
+     */
+    public static final int DX = 1;
+    public static final int DY = 2;
+
+    /**
+     * 传入图片的原始大小和想要实现的目标大小, 计算2的幂次的采样值. 采样后的宽高都不小于目标大小,
+     * 剩余的缩放交给{@link #densityScale(int, int, int, int, int[])}精确完成. 如果目标大于原图片那么是不进行处理的.
+     *
+     * @param width     原始图片的宽
+     * @param height    原始图片的高
+     * @param reqWidth  最终想要得到bitmap的宽度
+     * @param reqHeight 最终想要得到bitmap的高度
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        if (reqHeight <= 0 || reqWidth <= 0) {
+            return 1;
+        }
+
+        int inSampleSize = 1;
+
+        // 原图的宽比目标宽大, 或者高比目标高大时才需要采样
+        if (height > reqHeight || width > reqWidth) {
+            int halfWidth = width / 2;
+            int halfHeight = height / 2;
+
+            // 采样率翻倍后宽高仍然都不小于目标大小时, 继续翻倍
+            while ((halfHeight / inSampleSize) >= reqHeight && (halfWidth / inSampleSize) >= reqWidth) {
+                inSampleSize *= 2;
+            }
+        }
+
+        return inSampleSize;
+    }
+
+    /**
+     * 采样后按比例精确缩放到刚好覆盖目标大小, 以 inDensity / inTargetDensity 的形式给出, 只缩小不放大
+     *
+     * @param width     采样后的宽
+     * @param height    采样后的高
+     * @param reqWidth  目标宽
+     * @param reqHeight 目标高
+     * @param out       长度至少为2, 依次写入inDensity, inTargetDensity, 不需要缩放时都为0
+     */
+    public static void densityScale(int width, int height, int reqWidth, int reqHeight, int[] out) {
+        out[0] = 0;
+        out[1] = 0;
+        if (width <= 0 || height <= 0 || reqWidth <= 0 || reqHeight <= 0) {
+            return;
+        }
+
+        // 以缩小比例较小的一边为准, 保证缩放后两边都能覆盖目标
+        if ((long) reqWidth * height >= (long) reqHeight * width) {
+            if (reqWidth < width) {
+                out[0] = width;
+                out[1] = reqWidth;
+            }
+        } else if (reqHeight < height) {
+            out[0] = height;
+            out[1] = reqHeight;
+        }
+    }
+
+    /**
+     * 居中裁剪时原图中需要解码的区域, 宽高比与目标一致
+     *
+     * @param out 长度至少为4, 依次写入 左, 上, 右, 下
+     */
+    public static void centerCropRegion(int width, int height, int reqWidth, int reqHeight, int[] out) {
+        int regionWidth = width;
+        int regionHeight = height;
+        if (reqWidth > 0 && reqHeight > 0) {
+            if ((long) width * reqHeight > (long) height * reqWidth) {
+                regionWidth = (int) ((long) height * reqWidth / reqHeight);
+            } else {
+                regionHeight = (int) ((long) width * reqHeight / reqWidth);
+            }
+        }
+        regionWidth = Math.max(1, regionWidth);
+        regionHeight = Math.max(1, regionHeight);
+
+        out[0] = (width - regionWidth) / 2;
+        out[1] = (height - regionHeight) / 2;
+        out[2] = out[0] + regionWidth;
+        out[3] = out[1] + regionHeight;
+    }
+
+    /**
+     * 子元素的正方形裁剪: 跳过长边两端多出的部分, 再按短边缩放到可绘制区域.
+     * 使用时先平移(-dx, -dy)再缩放
+     *
+     * @param out 长度至少为3, 依次写入缩放比例, 长边的裁剪偏移
+     */
+    public static void cropSquare(int bitmapWidth, int bitmapHeight, float maxWidth, float maxHeight, float[] out) {
+        int dx = 0;
+        int dy = 0;
+        float scale;
+        if (bitmapWidth > bitmapHeight) {
+            scale = maxHeight / (float) bitmapHeight;
+            dx = ((bitmapWidth - bitmapHeight) / 2);
+        } else if (bitmapHeight > bitmapWidth) {
+            scale = maxWidth / (float) bitmapWidth;
+            dy = ((bitmapHeight - bitmapWidth) / 2);
+        } else {
+            scale = maxHeight / (float) bitmapHeight;
+        }
+
+        out[SCALE] = scale;
+        out[DX] = dx;
+        out[DY] = dy;
+    }
+
+    /**
+     * 居中裁剪: 比例不变, 填满区域, 超出部分裁掉. 使用时先缩放再平移(dx, dy)
+     *
+     * @param out 长度至少为3, 依次写入缩放比例, 缩放后的平移
+     */
+    public static void centerCrop(int bitmapWidth, int bitmapHeight, float sideWidth, float sideHeight, float[] out) {
+        float scale = Math.max(sideWidth / bitmapWidth, sideHeight / bitmapHeight);
+        out[SCALE] = scale;
+        out[DX] = (sideWidth - bitmapWidth * scale) * 0.5f;
+        out[DY] = (sideHeight - bitmapHeight * scale) * 0.5f;
+    }
+
+    /**
+     * 居中显示完整图片: 比例不变, 以长边为准缩放, 可能会有留白. 使用时先缩放再平移(dx, dy)
+     *
+     * @param out 长度至少为3, 依次写入缩放比例, 缩放后的平移
+     */
+    public static void centerInside(int bitmapWidth, int bitmapHeight, float sideWidth, float sideHeight,
+                                    float[] out) {
+        float scale;
+        float dx = 0;
+        float dy = 0;
+        if (bitmapWidth > bitmapHeight) {
+            scale = sideHeight / bitmapWidth;
+            dy = (sideHeight - bitmapHeight * scale) * 0.5f;
+        } else {
+            scale = sideHeight / bitmapHeight;
+            dx = (sideHeight - bitmapWidth * scale) * 0.5f;
+        }
+
+        out[SCALE] = scale;
+        out[DX] = dx;
+        out[DY] = dy;
+    }
+}
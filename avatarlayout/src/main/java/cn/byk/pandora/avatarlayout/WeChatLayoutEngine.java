@@ -0,0 +1,254 @@
+package cn.byk.pandora.avatarlayout;
+
+import java.util.ArrayList;
+
+/**
+ * 微信群组 measure测量布局计算, 从WeChatLayoutManager中移出, 屏幕密度由外部传入, 不依赖Android
+ */
+public class WeChatLayoutEngine implements ILayoutEngine {
+
+    public static final int MAX_NUM = 9;
+
+    /**
+     * 屏幕密度, 空隙从dp转换为像素时使用
+     */
+    private float mDensity;
+
+    /**
+     * 缓存返回子元素布局对象
+     */
+    private final ArrayList<LayoutTile> mCacheList;
+
+    /**
+     * 布局子元素的下标
+     */
+    private int curCachePoint;
+
+    /**
+     * 子元素的空隙, 例如两个图片的距离. 单位dp
+     */
+    private float mSpacing = 1f;
+
+    public WeChatLayoutEngine(float density) {
+        mDensity = density;
+        // 创建子元素的布局对象集合, 用于后续使用
+        mCacheList = new ArrayList<>();
+        for (int i = 0; i < MAX_NUM; i++) {
+            mCacheList.add(new LayoutTile());
+        }
+        curCachePoint = MAX_NUM - 1;
+    }
+
+    @Override
+    public ArrayList<LayoutTile> calculate(int viewWidth, int viewHeight, int viewNum) {
+        // 缓存集合清除无用信息
+        cleanMaskCache();
+
+        // 默认微信群组效果只支持9张最大图片
+        if (viewNum > MAX_NUM) {
+            viewNum = MAX_NUM;
+        } else if (viewNum < 1) {
+            throw new UnsupportedOperationException("不支持操作异常");
+        }
+
+        // 容错控件非正方形场景处理
+        int layoutSquareSide;       // 正方形边长
+        if (viewWidth != viewHeight) {
+            if (viewHeight - viewWidth > 0) {
+                layoutSquareSide = viewWidth;
+            } else {
+                layoutSquareSide = viewHeight;
+            }
+        } else {
+            layoutSquareSide = viewWidth;
+        }
+
+        // 返回的所有子元素布局信息集合
+        ArrayList<LayoutTile> infos = new ArrayList<>();
+
+        int half = 0;      // 子元素的边长
+
+        // 开始测量布局
+        if (viewNum == 1) {
+            half = layoutSquareSide;
+            infos.add(createChildrenForTop(viewWidth / 2 - half / 2, viewHeight / 2 - half / 2, half));
+        } else if (viewNum == 2) {
+            half = layoutSquareSide / 2;
+            fastTwoChild(viewWidth, (viewHeight - half) / 2, half, infos);
+        } else if (viewNum == 3) {
+            half = layoutSquareSide / 2;
+            infos.add(createChildrenForTop(viewWidth / 2 - half / 2, viewHeight / 2 - half, half));
+            fastTwoChild(viewWidth, viewHeight / 2, half, infos);
+        } else if (viewNum == 4) {
+            half = layoutSquareSide / 2;
+            fastTwoChild(viewWidth, viewHeight / 2 - half, half, infos);
+            fastTwoChild(viewWidth, viewHeight / 2, half, infos);
+        } else if (viewNum == 5) {
+            half = layoutSquareSide / 3;
+            fastTwoChild(viewWidth, viewHeight / 2 - half, half, infos);
+            fastThreeChild(viewWidth, viewHeight / 2, half, infos);
+        } else if (viewNum == 6) {
+            half = layoutSquareSide / 3;
+            fastThreeChild(viewWidth, viewHeight / 2 - half, half, infos);
+            fastThreeChild(viewWidth, viewHeight / 2, half, infos);
+        } else if (viewNum == 7) {
+            half = layoutSquareSide / 3;
+            infos.add(createChildrenForTop(viewWidth / 2 - half / 2, viewHeight / 2 - half / 2 * 3, half));
+            fastThreeChild(viewWidth, viewHeight / 2 - half / 2, half, infos);
+            fastThreeChild(viewWidth, viewHeight / 2 + half / 2, half, infos);
+        } else if (viewNum == 8) {
+            half = layoutSquareSide / 3;
+            fastTwoChild(viewWidth, viewHeight / 2 - half / 2 * 3, half, infos);
+            fastThreeChild(viewWidth, viewHeight / 2 - half / 2, half, infos);
+            fastThreeChild(viewWidth, viewHeight / 2 + half / 2, half, infos);
+        } else if (viewNum == 9) {
+            half = layoutSquareSide / 3;
+            fastThreeChild(viewWidth, viewHeight / 2 - half / 2 * 3, half, infos);
+            fastThreeChild(viewWidth, viewHeight / 2 - half / 2, half, infos);
+            fastThreeChild(viewWidth, viewHeight / 2 + half / 2, half, infos);
+        }
+
+        // 添加子元素之间的空隙
+        if (mSpacing > 0 && half > 0) {
+            addSpacing(mSpacing, half, infos);
+        }
+
+        return infos;
+    }
+
+    @Override
+    public LayoutResult layout(int viewWidth, int viewHeight, int viewNum) {
+        LayoutResult result = LayoutMemo.get(LayoutMemo.TYPE_WECHAT, viewWidth, viewHeight, viewNum, mSpacing,
+                                             mDensity);
+        if (result == null) {
+            // 计算过程使用内部复用的对象, 需要加锁, 转换为不可修改的结果后再放入缓存
+            synchronized (this) {
+                result = LayoutMemo.put(LayoutMemo.TYPE_WECHAT, viewWidth, viewHeight, viewNum, mSpacing, mDensity,
+                                        LayoutResult.of(calculate(viewWidth, viewHeight, viewNum)));
+            }
+        }
+        return result;
+    }
+
+    /** 存储子元素测量数据初始化 **/
+    private void cleanMaskCache() {
+        for (LayoutTile tile : mCacheList) {
+            tile.reset();
+        }
+        curCachePoint = 0;
+    }
+
+    /** 对布局元素中的每个子元素添加空隙 **/
+    private void addSpacing(float dp, int side, ArrayList<LayoutTile> datas) {
+        int addPixel = (int) dip2px(mDensity, dp);
+
+        // 每个子元素的空隙不得超出子元素边长的三分之一
+        addPixel = Math.min(addPixel, side / 3);
+
+        // 开始添加空隙
+        for (LayoutTile data : datas) {
+            data.innerHeight = data.innerWidth = data.innerWidth - 2 * addPixel;
+            data.right -= addPixel;
+            data.bottom -= addPixel;
+            data.left += addPixel;
+            data.top += addPixel;
+        }
+    }
+
+    /**
+     * 通过左上点  创建子元素布局信息
+     *
+     * @param left 右上点的x
+     * @param top  右上点的y
+     * @param side 需要画出子元素的边长
+     */
+    private LayoutTile createChildrenForTop(int left, int top, int side) {
+        LayoutTile childLayout = mCacheList.get(curCachePoint);
+        childLayout.set(left, top, left + side, top + side, side);
+        curCachePoint++;
+        return childLayout;
+    }
+
+    /**
+     * 通过右下点 创建子元素布局信息
+     *
+     * @param right  右下点的x
+     * @param bottom 右下点的y
+     * @param side   需要画出子元素的边长
+     */
+    private LayoutTile createChildrenForBottom(int right, int bottom, int side) {
+        LayoutTile childLayout = mCacheList.get(curCachePoint);
+        childLayout.set(right - side, bottom - side, right, bottom, side);
+        curCachePoint++;
+        return childLayout;
+    }
+
+    /**
+     * 快速创建一个水平线两个子元素的场景, 如微信群组的, 2人, 3人, 4人, 5人, 8人
+     *
+     * @param viewWidth 控件的宽度
+     * @param positiveY 这一个水平线两张图片的左上角的y点
+     * @param side      子元素的边长
+     * @param mLayouts  布局集合
+     */
+    private void fastTwoChild(int viewWidth, int positiveY, int side, ArrayList<LayoutTile> mLayouts) {
+        // 第一个元素
+        mLayouts.add(createChildrenForTop(viewWidth / 2 - side, positiveY, side));
+        // 第二个元素
+        mLayouts.add(createChildrenForTop(viewWidth / 2, positiveY, side));
+    }
+
+    /**
+     * 快速创建一个水平线三个子元素的场景, 如微信群组的, 5人, 6人, 7人, 8人, 9人时
+     *
+     * @param viewWidth 控件的宽度
+     * @param positiveY 这一个水平线两张图片的左上角的y点
+     * @param side      子元素的边长
+     * @param mLayouts  布局集合
+     */
+    private void fastThreeChild(int viewWidth, int positiveY, int side, ArrayList<LayoutTile> mLayouts) {
+        mLayouts.add(createChildrenForTop(viewWidth / 2 - side / 2 * 3, positiveY, side));
+        mLayouts.add(createChildrenForTop(viewWidth / 2 - side / 2, positiveY, side));
+        mLayouts.add(createChildrenForTop(viewWidth / 2 + side / 2, positiveY, side));
+    }
+
+    /**
+     * 获取子元素的空隙
+     *
+     * @return 返回单位dp
+     */
+    public float getSpacing() {
+        return mSpacing;
+    }
+
+    /**
+     * 设置子元素间的空隙
+     *
+     * @param mSpacing 单位dp
+     */
+    public void setSpacing(float mSpacing) {
+        this.mSpacing = mSpacing;
+    }
+
+    public float getDensity() {
+        return mDensity;
+    }
+
+    /**
+     * 设置屏幕密度, 用于把dp单位的空隙转换为像素
+     */
+    public void setDensity(float density) {
+        mDensity = density;
+    }
+
+    /**
+     * dip转换px, 与ScreenMan.dip2px的取整方式一致
+     *
+     * @param density 屏幕密度
+     * @param dip     dip
+     * @return px
+     */
+    public static float dip2px(float density, float dip) {
+        return Math.round(dip * density * 100) / 100;
+    }
+}
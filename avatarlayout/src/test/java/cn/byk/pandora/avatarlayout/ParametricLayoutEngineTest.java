@@ -0,0 +1,176 @@
+package cn.byk.pandora.avatarlayout;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 参数化布局的边界测试: 所有子元素都在居中的正方形内, 互不重叠, 以及少量数量下的坐标回归
+ */
+public class ParametricLayoutEngineTest {
+
+    private static final float DENSITY = 2f;
+
+    private static final int MAX_COUNT = 64;
+
+    /**
+     * 模板按比例缩放后取整, 相邻子元素最多重叠的像素
+     */
+    private static final int ROUNDING_SLOP = 1;
+
+    private static final int[][] SIZES = {{200, 200}, {240, 320}, {333, 180}, {48, 48}};
+
+    @Test
+    public void gridStaysInsideBounds() {
+        assertBounds(ParametricLayoutEngine.MODE_GRID);
+    }
+
+    @Test
+    public void ringStaysInsideBounds() {
+        assertBounds(ParametricLayoutEngine.MODE_RING);
+    }
+
+    @Test
+    public void packedStaysInsideBounds() {
+        assertBounds(ParametricLayoutEngine.MODE_PACKED);
+    }
+
+    @Test
+    public void gridTilesDoNotOverlap() {
+        assertNoOverlap(ParametricLayoutEngine.MODE_GRID, false);
+    }
+
+    @Test
+    public void ringTilesDoNotOverlap() {
+        assertNoOverlap(ParametricLayoutEngine.MODE_RING, true);
+    }
+
+    @Test
+    public void packedTilesDoNotOverlap() {
+        assertNoOverlap(ParametricLayoutEngine.MODE_PACKED, true);
+    }
+
+    @Test
+    public void gridUsesSquareColumns() {
+        ParametricLayoutEngine engine = new ParametricLayoutEngine(ParametricLayoutEngine.MODE_GRID, DENSITY);
+        assertEquals(4, distinctLefts(engine.layout(400, 400, 16)));
+        assertEquals(5, distinctLefts(engine.layout(400, 400, 25)));
+    }
+
+    @Test
+    public void gridMatchesGolden() {
+        assertGolden(ParametricLayoutEngine.MODE_GRID, 4,
+                     new int[][]{{2, 2, 98, 98}, {102, 2, 198, 98}, {2, 102, 98, 198}, {102, 102, 198, 198}});
+        assertGolden(ParametricLayoutEngine.MODE_GRID, 7,
+                     new int[][]{{69, 2, 131, 64}, {2, 69, 64, 131}, {69, 69, 131, 131}, {135, 69, 197, 131},
+                             {2, 135, 64, 197}, {69, 135, 131, 197}, {135, 135, 197, 197}});
+    }
+
+    @Test
+    public void ringMatchesGolden() {
+        assertGolden(ParametricLayoutEngine.MODE_RING, 4,
+                     new int[][]{{61, 2, 139, 80}, {119, 61, 197, 139}, {61, 119, 139, 197}, {2, 61, 80, 139}});
+    }
+
+    @Test
+    public void packedMatchesGolden() {
+        assertGolden(ParametricLayoutEngine.MODE_PACKED, 7,
+                     new int[][]{{69, 69, 131, 131}, {69, 2, 131, 64}, {126, 35, 188, 97}, {126, 102, 188, 164},
+                             {69, 135, 131, 197}, {11, 102, 73, 164}, {11, 35, 73, 97}});
+    }
+
+    @Test
+    public void singleTileFillsSquare() {
+        for (int mode = ParametricLayoutEngine.MODE_GRID; mode <= ParametricLayoutEngine.MODE_PACKED; mode++) {
+            assertGolden(mode, 1, new int[][]{{2, 2, 198, 198}});
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownMode() {
+        new ParametricLayoutEngine(3, DENSITY);
+    }
+
+    private static void assertBounds(int mode) {
+        ParametricLayoutEngine engine = new ParametricLayoutEngine(mode, DENSITY);
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            int side = Math.min(width, height);
+            int left = (width - side) >> 1;
+            int top = (height - side) >> 1;
+            for (int count = 1; count <= MAX_COUNT; count++) {
+                LayoutResult result = engine.layout(width, height, count);
+                assertEquals(count, result.size());
+                for (int i = 0; i < count; i++) {
+                    String message = "mode " + mode + " " + width + "x" + height + " count " + count + " index " + i;
+                    assertTrue(message, result.getLeft(i) >= left);
+                    assertTrue(message, result.getTop(i) >= top);
+                    assertTrue(message, result.getRight(i) <= left + side);
+                    assertTrue(message, result.getBottom(i) <= top + side);
+                    assertEquals(message, result.getRight(i) - result.getLeft(i), result.getInnerWidth(i));
+                    assertEquals(message, result.getBottom(i) - result.getTop(i), result.getInnerHeight(i));
+                    assertTrue(message, result.getInnerWidth(i) >= 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * 网格按矩形检查, 环形和密排的子元素是圆形, 按内切圆检查. 坐标分别取整, 每个方向最多相差1像素
+     */
+    private static void assertNoOverlap(int mode, boolean circles) {
+        ParametricLayoutEngine engine = new ParametricLayoutEngine(mode, DENSITY);
+        engine.setSpacing(0);
+        for (int count = 2; count <= MAX_COUNT; count++) {
+            LayoutResult result = engine.layout(600, 600, count);
+            for (int i = 0; i < count; i++) {
+                for (int j = i + 1; j < count; j++) {
+                    String message = "mode " + mode + " count " + count + " tiles " + i + ", " + j;
+                    if (circles) {
+                        double dx = (result.getLeft(i) + result.getRight(i)) / 2.0
+                                - (result.getLeft(j) + result.getRight(j)) / 2.0;
+                        double dy = (result.getTop(i) + result.getBottom(i)) / 2.0
+                                - (result.getTop(j) + result.getBottom(j)) / 2.0;
+                        double radii = (result.getInnerWidth(i) + result.getInnerWidth(j)) / 2.0;
+                        assertTrue(message, Math.sqrt(dx * dx + dy * dy) >= radii - ROUNDING_SLOP * Math.sqrt(2));
+                    } else {
+                        assertTrue(message, result.getRight(i) - ROUNDING_SLOP <= result.getLeft(j)
+                                || result.getRight(j) - ROUNDING_SLOP <= result.getLeft(i)
+                                || result.getBottom(i) - ROUNDING_SLOP <= result.getTop(j)
+                                || result.getBottom(j) - ROUNDING_SLOP <= result.getTop(i));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertGolden(int mode, int count, int[][] expected) {
+        LayoutResult result = new ParametricLayoutEngine(mode, DENSITY).layout(200, 200, count);
+        assertEquals(expected.length, result.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals("mode " + mode + " count " + count + " index " + i, expected[i],
+                              new int[]{result.getLeft(i), result.getTop(i), result.getRight(i),
+                                      result.getBottom(i)});
+        }
+    }
+
+    private static int distinctLefts(LayoutResult result) {
+        int count = 0;
+        for (int i = 0; i < result.size(); i++) {
+            boolean seen = false;
+            for (int j = 0; j < i; j++) {
+                if (result.getLeft(j) == result.getLeft(i)) {
+                    seen = true;
+                    break;
+                }
+            }
+            if (!seen) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,168 @@
+package cn.byk.pandora.avatarlayout;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * QQ群组布局的坐标回归测试, 期望值来自移出Android之前的QQLayoutManager
+ */
+public class QQLayoutEngineTest {
+
+    /**
+     * 200x200时1~5个子元素的 左, 上, 边长
+     */
+    private static final int[][][] SQUARE = {
+            {{10, 10, 180}},
+            {{17, 17, 100}, {82, 82, 100}},
+            {{55, 19, 90}, {13, 91, 90}, {96, 91, 90}},
+            {{14, 14, 90}, {95, 14, 90}, {95, 95, 90}, {14, 95, 90}},
+            {{62, 7, 76}, {4, 49, 76}, {26, 116, 76}, {97, 116, 76}, {119, 49, 76}}};
+
+    /**
+     * 200x260时在正方形内布局, 整体垂直居中
+     */
+    private static final int[][][] TALL = {
+            {{10, 40, 180}},
+            {{17, 47, 100}, {82, 112, 100}},
+            {{55, 49, 90}, {13, 121, 90}, {96, 121, 90}},
+            {{14, 44, 90}, {95, 44, 90}, {95, 125, 90}, {14, 125, 90}},
+            {{62, 37, 76}, {4, 79, 76}, {26, 146, 76}, {97, 146, 76}, {119, 79, 76}}};
+
+    /**
+     * 300x240时在正方形内布局, 整体水平居中
+     */
+    private static final int[][][] WIDE = {
+            {{42, 12, 216}},
+            {{51, 21, 120}, {129, 99, 120}},
+            {{96, 22, 108}, {46, 109, 108}, {145, 109, 108}},
+            {{46, 16, 108}, {145, 16, 108}, {145, 115, 108}, {46, 115, 108}},
+            {{104, 8, 91}, {35, 58, 91}, {61, 140, 91}, {147, 140, 91}, {173, 58, 91}}};
+
+    private final QQLayoutEngine mEngine = new QQLayoutEngine();
+
+    @Test
+    public void calculateMatchesGoldenSquare() {
+        assertGolden(200, 200, SQUARE);
+    }
+
+    @Test
+    public void calculateMatchesGoldenTall() {
+        assertGolden(200, 260, TALL);
+    }
+
+    @Test
+    public void calculateMatchesGoldenWide() {
+        assertGolden(300, 240, WIDE);
+    }
+
+    @Test
+    public void moreThanMaxUsesMaxLayout() {
+        ArrayList<LayoutTile> tiles = mEngine.calculate(200, 200, 9);
+        assertEquals(QQLayoutEngine.MAX_NUM, tiles.size());
+        assertTile(SQUARE[QQLayoutEngine.MAX_NUM - 1][0], tiles.get(0), "9");
+    }
+
+    @Test
+    public void layoutMatchesCalculate() {
+        for (int count = 1; count <= QQLayoutEngine.MAX_NUM; count++) {
+            ArrayList<LayoutTile> tiles = mEngine.calculate(200, 260, count);
+            LayoutResult result = mEngine.layout(200, 260, count);
+            assertEquals(tiles.size(), result.size());
+            for (int i = 0; i < tiles.size(); i++) {
+                LayoutTile tile = tiles.get(i);
+                assertEquals(tile.left, result.getLeft(i));
+                assertEquals(tile.top, result.getTop(i));
+                assertEquals(tile.innerWidth, result.getInnerWidth(i));
+                assertEquals(tile.innerHeight, result.getInnerHeight(i));
+            }
+        }
+    }
+
+    @Test
+    public void calculateIntoMatchesCalculate() {
+        LayoutBuffer buffer = new LayoutBuffer(1);
+        for (int count = 1; count <= QQLayoutEngine.MAX_NUM + 1; count++) {
+            ArrayList<LayoutTile> tiles = mEngine.calculate(300, 240, count);
+            mEngine.calculateInto(300, 240, count, buffer);
+            assertEquals(tiles.size(), buffer.size());
+            for (int i = 0; i < tiles.size(); i++) {
+                LayoutTile tile = tiles.get(i);
+                assertEquals(tile.left, buffer.getX(i));
+                assertEquals(tile.top, buffer.getY(i));
+                assertEquals(tile.innerWidth, buffer.getWidth(i));
+                assertEquals(tile.innerHeight, buffer.getHeight(i));
+            }
+        }
+    }
+
+    @Test
+    public void offsetIntoMatchesOffset() {
+        float[] out = new float[2];
+        for (int count = 1; count <= QQLayoutEngine.MAX_NUM; count++) {
+            float[] size = QQLayoutEngine.SIZES[count - 1];
+            for (int i = 0; i < count; i++) {
+                assertArrayEquals(QQLayoutEngine.offset(count, i, 200, size),
+                                  QQLayoutEngine.offset(count, i, 200, size, out), 0f);
+            }
+        }
+    }
+
+    /**
+     * 五边形布局改用类加载时计算的三角函数值, 结果必须与逐次调用Math.cos/Math.sin时逐位相同
+     */
+    @Test
+    public void trigTableMatchesPerCallTrig() {
+        float[] size = QQLayoutEngine.SIZES[4];
+        float[] out = new float[10];
+        for (int dimension = 1; dimension <= 2048; dimension++) {
+            QQLayoutEngine.offsets(5, dimension, size, out);
+            float[] expected = perCallOffset5(dimension, size);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals("dimension " + dimension + " index " + i, Float.floatToIntBits(expected[i]),
+                             Float.floatToIntBits(out[i]));
+            }
+        }
+    }
+
+    /**
+     * 原来的五边形坐标计算, 每次都调用三角函数
+     */
+    private static float[] perCallOffset5(float dimension, float[] size) {
+        float cd = dimension * size[0];
+        float s1 = -cd * size[1];
+
+        float x2 = (float) (s1 * Math.cos(19 * Math.PI / 180));
+        float y2 = (float) (s1 * Math.sin(18 * Math.PI / 180));
+        float x3 = (float) (s1 * Math.cos(54 * Math.PI / 180));
+        float y3 = (float) (-s1 * Math.sin(54 * Math.PI / 180));
+        float x4 = (float) (-s1 * Math.cos(54 * Math.PI / 180));
+        float y4 = (float) (-s1 * Math.sin(54 * Math.PI / 180));
+        float x5 = (float) (-s1 * Math.cos(19 * Math.PI / 180));
+        float y5 = (float) (s1 * Math.sin(18 * Math.PI / 180));
+
+        float xx1 = (dimension - cd - y3 - s1) / 2;
+        float xxc1 = (dimension - cd) / 2;
+        return new float[]{xxc1, s1 + xx1, x2 + xxc1, y2 + xx1, x3 + xxc1, y3 + xx1, x4 + xxc1, y4 + xx1,
+                x5 + xxc1, y5 + xx1};
+    }
+
+    private void assertGolden(int width, int height, int[][][] golden) {
+        for (int count = 1; count <= golden.length; count++) {
+            ArrayList<LayoutTile> tiles = mEngine.calculate(width, height, count);
+            int[][] expected = golden[count - 1];
+            assertEquals(expected.length, tiles.size());
+            for (int i = 0; i < expected.length; i++) {
+                assertTile(expected[i], tiles.get(i), width + "x" + height + " count " + count + " index " + i);
+            }
+        }
+    }
+
+    private static void assertTile(int[] expected, LayoutTile tile, String message) {
+        assertArrayEquals(message, expected, new int[]{tile.left, tile.top, tile.innerWidth});
+        assertEquals(message, tile.innerWidth, tile.innerHeight);
+    }
+}
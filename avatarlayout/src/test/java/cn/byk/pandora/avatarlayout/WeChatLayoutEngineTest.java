@@ -0,0 +1,106 @@
+package cn.byk.pandora.avatarlayout;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 微信群组布局的坐标回归测试, 期望值来自移出Android之前的WeChatLayoutManager, 屏幕密度为2, 空隙为默认的1dp
+ */
+public class WeChatLayoutEngineTest {
+
+    private static final float DENSITY = 2f;
+
+    /**
+     * 300x300时1~9个子元素的 左, 上, 右, 下, 边长
+     */
+    private static final int[][][] SQUARE = {
+            {{2, 2, 298, 298, 296}},
+            {{2, 77, 148, 223, 146}, {152, 77, 298, 223, 146}},
+            {{77, 2, 223, 148, 146}, {2, 152, 148, 298, 146}, {152, 152, 298, 298, 146}},
+            {{2, 2, 148, 148, 146}, {152, 2, 298, 148, 146}, {2, 152, 148, 298, 146}, {152, 152, 298, 298, 146}},
+            {{52, 52, 148, 148, 96}, {152, 52, 248, 148, 96}, {2, 152, 98, 248, 96}, {102, 152, 198, 248, 96},
+                    {202, 152, 298, 248, 96}},
+            {{2, 52, 98, 148, 96}, {102, 52, 198, 148, 96}, {202, 52, 298, 148, 96}, {2, 152, 98, 248, 96},
+                    {102, 152, 198, 248, 96}, {202, 152, 298, 248, 96}},
+            {{102, 2, 198, 98, 96}, {2, 102, 98, 198, 96}, {102, 102, 198, 198, 96}, {202, 102, 298, 198, 96},
+                    {2, 202, 98, 298, 96}, {102, 202, 198, 298, 96}, {202, 202, 298, 298, 96}},
+            {{52, 2, 148, 98, 96}, {152, 2, 248, 98, 96}, {2, 102, 98, 198, 96}, {102, 102, 198, 198, 96},
+                    {202, 102, 298, 198, 96}, {2, 202, 98, 298, 96}, {102, 202, 198, 298, 96},
+                    {202, 202, 298, 298, 96}},
+            {{2, 2, 98, 98, 96}, {102, 2, 198, 98, 96}, {202, 2, 298, 98, 96}, {2, 102, 98, 198, 96},
+                    {102, 102, 198, 198, 96}, {202, 102, 298, 198, 96}, {2, 202, 98, 298, 96},
+                    {102, 202, 198, 298, 96}, {202, 202, 298, 298, 96}}};
+
+    /**
+     * 300x360时在正方形内布局, 整体垂直居中
+     */
+    private static final int[][][] TALL = {
+            {{2, 32, 298, 328, 296}},
+            {{2, 107, 148, 253, 146}, {152, 107, 298, 253, 146}},
+            {{77, 32, 223, 178, 146}, {2, 182, 148, 328, 146}, {152, 182, 298, 328, 146}},
+            {{2, 32, 148, 178, 146}, {152, 32, 298, 178, 146}, {2, 182, 148, 328, 146}, {152, 182, 298, 328, 146}},
+            {{52, 82, 148, 178, 96}, {152, 82, 248, 178, 96}, {2, 182, 98, 278, 96}, {102, 182, 198, 278, 96},
+                    {202, 182, 298, 278, 96}},
+            {{2, 82, 98, 178, 96}, {102, 82, 198, 178, 96}, {202, 82, 298, 178, 96}, {2, 182, 98, 278, 96},
+                    {102, 182, 198, 278, 96}, {202, 182, 298, 278, 96}},
+            {{102, 32, 198, 128, 96}, {2, 132, 98, 228, 96}, {102, 132, 198, 228, 96}, {202, 132, 298, 228, 96},
+                    {2, 232, 98, 328, 96}, {102, 232, 198, 328, 96}, {202, 232, 298, 328, 96}},
+            {{52, 32, 148, 128, 96}, {152, 32, 248, 128, 96}, {2, 132, 98, 228, 96}, {102, 132, 198, 228, 96},
+                    {202, 132, 298, 228, 96}, {2, 232, 98, 328, 96}, {102, 232, 198, 328, 96},
+                    {202, 232, 298, 328, 96}},
+            {{2, 32, 98, 128, 96}, {102, 32, 198, 128, 96}, {202, 32, 298, 128, 96}, {2, 132, 98, 228, 96},
+                    {102, 132, 198, 228, 96}, {202, 132, 298, 228, 96}, {2, 232, 98, 328, 96},
+                    {102, 232, 198, 328, 96}, {202, 232, 298, 328, 96}}};
+
+    @Test
+    public void calculateMatchesGoldenSquare() {
+        assertGolden(300, 300, SQUARE);
+    }
+
+    @Test
+    public void calculateMatchesGoldenTall() {
+        assertGolden(300, 360, TALL);
+    }
+
+    @Test
+    public void layoutMatchesCalculate() {
+        WeChatLayoutEngine engine = new WeChatLayoutEngine(DENSITY);
+        for (int count = 1; count <= WeChatLayoutEngine.MAX_NUM; count++) {
+            LayoutResult result = engine.layout(300, 360, count);
+            ArrayList<LayoutTile> tiles = engine.calculate(300, 360, count);
+            assertEquals(tiles.size(), result.size());
+            for (int i = 0; i < tiles.size(); i++) {
+                LayoutTile tile = tiles.get(i);
+                assertArrayEquals(new int[]{tile.left, tile.top, tile.right, tile.bottom, tile.innerWidth},
+                                  new int[]{result.getLeft(i), result.getTop(i), result.getRight(i),
+                                          result.getBottom(i), result.getInnerWidth(i)});
+            }
+        }
+    }
+
+    @Test
+    public void dip2pxRoundsLikeScreenMan() {
+        assertEquals(2f, WeChatLayoutEngine.dip2px(2f, 1f), 0f);
+        assertEquals(3f, WeChatLayoutEngine.dip2px(3f, 1f), 0f);
+        assertEquals(1f, WeChatLayoutEngine.dip2px(1.5f, 1f), 0f);
+    }
+
+    private static void assertGolden(int width, int height, int[][][] golden) {
+        WeChatLayoutEngine engine = new WeChatLayoutEngine(DENSITY);
+        for (int count = 1; count <= golden.length; count++) {
+            ArrayList<LayoutTile> tiles = engine.calculate(width, height, count);
+            int[][] expected = golden[count - 1];
+            assertEquals(expected.length, tiles.size());
+            for (int i = 0; i < expected.length; i++) {
+                LayoutTile tile = tiles.get(i);
+                assertArrayEquals(width + "x" + height + " count " + count + " index " + i, expected[i],
+                                  new int[]{tile.left, tile.top, tile.right, tile.bottom, tile.innerWidth});
+                assertEquals(tile.innerWidth, tile.innerHeight);
+            }
+        }
+    }
+}
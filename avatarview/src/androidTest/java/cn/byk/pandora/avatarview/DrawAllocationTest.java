@@ -0,0 +1,163 @@
+package cn.byk.pandora.avatarview;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Debug;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import cn.byk.pandora.avatarview.rule.ShaderDrawingStrategy;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 绑定内容后的稳定绘制不应再分配Java对象. 先绘制几次完成布局和缓存的初始化, 再统计之后重复绘制的分配次数
+ */
+@RunWith(AndroidJUnit4.class)
+public class DrawAllocationTest {
+
+    private static final int SIZE = 200;
+    private static final int WARM_UP_DRAWS = 5;
+    private static final int COUNTED_DRAWS = 50;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation()
+                                          .getTargetContext();
+    }
+
+    @Test
+    public void singlePicture() {
+        AvatarView view = newView();
+        view.setBitmap(createSource(Color.RED));
+        assertEquals(0, countDrawAllocations(view));
+    }
+
+    @Test
+    public void qqGroupWithoutCompositeCache() {
+        AvatarView view = newView().setCompositeCacheEnabled(false)
+                                   .setDisplayShape(AvatarView.TYPE_CIRCLE);
+        view.setImages(createSources(4));
+        assertEquals(0, countDrawAllocations(view));
+    }
+
+    @Test
+    public void qqGroupWithCompositeCache() {
+        AvatarView view = newView().setCompositeCacheEnabled(true)
+                                   .setDisplayShape(AvatarView.TYPE_CIRCLE);
+        view.setImages(createSources(5));
+        assertEquals(0, countDrawAllocations(view));
+    }
+
+    @Test
+    public void rectGroupWithoutCompositeCache() {
+        AvatarView view = newView().setCompositeCacheEnabled(false)
+                                   .setDisplayShape(AvatarView.TYPE_RECT);
+        view.setImages(createSources(9));
+        assertEquals(0, countDrawAllocations(view));
+    }
+
+    @Test
+    public void shaderGroupWithoutCompositeCache() {
+        AvatarView view = newView().setCompositeCacheEnabled(false)
+                                   .setDisplayShape(AvatarView.TYPE_CIRCLE)
+                                   .setDrawStrategy(new ShaderDrawingStrategy());
+        view.setImages(createSources(4));
+        assertEquals(0, countDrawAllocations(view));
+    }
+
+    @Test
+    public void urlGroupWithCompositeCache() {
+        AvatarView view = newView().setCompositeCacheEnabled(true)
+                                   .setDisplayShape(AvatarView.TYPE_CIRCLE);
+        bindUrls(view, "a://1", "a://2", "a://3", "a://4");
+        assertEquals(0, countDrawAllocations(view));
+    }
+
+    @Test
+    public void urlGroupWithoutCompositeCache() {
+        AvatarView view = newView().setCompositeCacheEnabled(false)
+                                   .setDisplayShape(AvatarView.TYPE_CIRCLE);
+        bindUrls(view, "a://1", "a://2", FakeImageSource.FAIL_PREFIX + "3");
+        assertEquals(0, countDrawAllocations(view));
+    }
+
+    /**
+     * 通过假的加载来源按地址绑定, 等待所有结果交给控件
+     */
+    private static void bindUrls(final AvatarView view, final String... urls) {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                view.setImageSource(new FakeImageSource())
+                    .setImageUrls(Arrays.asList(urls));
+            }
+        });
+        instrumentation.waitForIdleSync();
+    }
+
+    private AvatarView newView() {
+        AvatarView view = new AvatarView(mContext);
+        int spec = View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY);
+        view.measure(spec, spec);
+        view.layout(0, 0, SIZE, SIZE);
+        return view;
+    }
+
+    private static List<Bitmap> createSources(int count) {
+        List<Bitmap> bitmaps = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            bitmaps.add(createSource(Color.HSVToColor(new float[]{i * 40f, 1f, 1f})));
+        }
+        return bitmaps;
+    }
+
+    private static Bitmap createSource(int color) {
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        return bitmap;
+    }
+
+    /**
+     * 在主线程预热后重复绘制, 返回统计期间当前线程的分配次数
+     */
+    @SuppressWarnings("deprecation")
+    private static int countDrawAllocations(final AvatarView view) {
+        final int[] count = new int[1];
+        InstrumentationRegistry.getInstrumentation()
+                               .runOnMainSync(new Runnable() {
+                                   @Override
+                                   public void run() {
+                                       Canvas canvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE,
+                                                                                      Bitmap.Config.ARGB_8888));
+                                       for (int i = 0; i < WARM_UP_DRAWS; i++) {
+                                           view.onDraw(canvas);
+                                       }
+
+                                       Debug.resetThreadAllocCount();
+                                       Debug.startAllocCounting();
+                                       for (int i = 0; i < COUNTED_DRAWS; i++) {
+                                           view.onDraw(canvas);
+                                       }
+                                       Debug.stopAllocCounting();
+                                       count[0] = Debug.getThreadAllocCount();
+                                   }
+                               });
+        return count[0];
+    }
+}
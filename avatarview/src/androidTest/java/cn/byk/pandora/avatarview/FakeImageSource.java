@@ -0,0 +1,50 @@
+package cn.byk.pandora.avatarview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import cn.byk.pandora.avatarview.source.AvatarImageSource;
+
+/**
+ * 测试用的加载来源, 同步返回按地址着色的图片. 地址以"fail:"开头时加载失败
+ */
+class FakeImageSource implements AvatarImageSource {
+
+    static final String FAIL_PREFIX = "fail:";
+
+    private int mLoadCount;
+
+    int getLoadCount() {
+        return mLoadCount;
+    }
+
+    @Override
+    public boolean canLoad(String url) {
+        return true;
+    }
+
+    @Override
+    public Job load(Context context, String url, int width, int height, boolean exactSize, boolean preferRgb565,
+                    Callback callback) {
+        mLoadCount++;
+        if (url.startsWith(FAIL_PREFIX)) {
+            callback.onFailed();
+        } else {
+            Bitmap bitmap = Bitmap.createBitmap(Math.max(1, width), Math.max(1, height), Bitmap.Config.ARGB_8888);
+            bitmap.eraseColor(Color.HSVToColor(new float[]{Math.abs(url.hashCode()) % 360, 1f, 1f}));
+            callback.onReady(bitmap);
+        }
+        return DONE;
+    }
+
+    private static final Job DONE = new Job() {
+        @Override
+        public void cancel() {}
+
+        @Override
+        public boolean isDone() {
+            return true;
+        }
+    };
+}
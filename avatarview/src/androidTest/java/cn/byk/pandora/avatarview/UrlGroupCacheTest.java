@@ -0,0 +1,88 @@
+package cn.byk.pandora.avatarview;
+
+import android.app.Instrumentation;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import cn.byk.pandora.avatarview.cache.CompositeCache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 按地址加载的多图全部完成后, 合成结果应当进入合成缓存, 之后的绘制直接命中
+ */
+@RunWith(AndroidJUnit4.class)
+public class UrlGroupCacheTest {
+
+    private static final int SIZE = 200;
+
+    private Instrumentation mInstrumentation;
+    private CompositeCache mCache;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mCache = CompositeCache.getInstance();
+        mCache.clear();
+    }
+
+    @Test
+    public void loadedGroupReachesCache() {
+        AvatarView view = bind("a://1", "a://2", "a://3", "a://4");
+        assertCachedAfterDraw(view);
+    }
+
+    @Test
+    public void groupWithFailedMemberReachesCache() {
+        // 失败的位置没有错误图, 仍然占用原来的位置, 加载完成后同样进入缓存
+        AvatarView view = bind("a://1", FakeImageSource.FAIL_PREFIX + "2", "a://3");
+        assertCachedAfterDraw(view);
+    }
+
+    private AvatarView bind(final String... urls) {
+        final AvatarView[] holder = new AvatarView[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                AvatarView view = new AvatarView(mInstrumentation.getTargetContext());
+                view.setCompositeCacheEnabled(true)
+                    .setImageSource(new FakeImageSource());
+                int spec = View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY);
+                view.measure(spec, spec);
+                view.layout(0, 0, SIZE, SIZE);
+                view.setImageUrls(Arrays.asList(urls));
+                holder[0] = view;
+            }
+        });
+        // 等待加载结果切回主线程交给控件
+        mInstrumentation.waitForIdleSync();
+        return holder[0];
+    }
+
+    private void assertCachedAfterDraw(final AvatarView view) {
+        final int misses = mCache.missCount();
+        final int hits = mCache.hitCount();
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Canvas canvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+                view.onDraw(canvas);
+                view.onDraw(canvas);
+            }
+        });
+
+        assertTrue("composite was never cached", mCache.size() > 0);
+        assertEquals(misses + 1, mCache.missCount());
+        assertEquals(hits + 1, mCache.hitCount());
+    }
+}
@@ -0,0 +1,378 @@
+package cn.byk.pandora.avatarview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cn.byk.pandora.avatarlayout.LayoutBuffer;
+import cn.byk.pandora.avatarview.bean.DisplayInfo;
+import cn.byk.pandora.avatarview.bean.ResInfo;
+import cn.byk.pandora.avatarview.cache.BitmapPool;
+import cn.byk.pandora.avatarview.cache.TileCache;
+import cn.byk.pandora.avatarview.layout.ILayoutManager;
+import cn.byk.pandora.avatarview.layout.LayoutAdapter;
+import cn.byk.pandora.avatarview.layout.QQLayoutManager;
+import cn.byk.pandora.avatarview.metrics.DrawRecord;
+import cn.byk.pandora.avatarview.rule.ConcreteDrawingStrategy;
+import cn.byk.pandora.avatarview.rule.IDirectDrawingStrategy;
+import cn.byk.pandora.avatarview.rule.IDrawingStrategy;
+import cn.byk.pandora.avatarview.rule.NormalOnePicStrategy;
+import cn.byk.pandora.avatarview.rule.ShaderDrawingStrategy;
+
+/**
+ * 不依赖控件的组合头像合成器, 可用于通知栏, 快捷方式, 分享等需要直接得到bitmap的场景
+ * <p>
+ * 配置方式与{@link AvatarView}一致. 合成方法可以在多个工作线程并发调用, 每次合成使用独立的数据副本,
+ * 布局规则和绘制策略内部有复用的对象, 使用时按对象加锁, 同一个策略的绘制会串行执行
+ */
+public class AvatarComposer {
+
+    private int mWidth;
+    private int mHeight;
+
+    private ILayoutManager mLayoutManager = new QQLayoutManager();
+    private IDrawingStrategy mDrawStrategy = new ConcreteDrawingStrategy();
+
+    /**
+     * 一张图片时使用的内置策略, 自定义策略时不使用
+     */
+    private final NormalOnePicStrategy mNormalOnePicStrategy = new NormalOnePicStrategy();
+
+    private int mDisplayType = AvatarView.TYPE_CIRCLE;
+    private int mScaleType = AvatarView.SCALE_TYPE_CENTER_INSIDE;
+    private int mBitmapConfig = AvatarView.getDefaultBitmapConfig();
+
+    private float mBorderWidth = 0;
+    private int mBorderColor = Color.WHITE;
+
+    /**
+     * 设置合成结果的宽高, 使用{@link #compose(List, Bitmap)}时以目标bitmap的宽高为准
+     */
+    public synchronized AvatarComposer setSize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        return this;
+    }
+
+    /**
+     * 设置子元素的布局规则, 与{@link AvatarView#setLayoutManager(ILayoutManager)}一致
+     */
+    public synchronized AvatarComposer setLayoutManager(ILayoutManager layoutManager) {
+        if (layoutManager != null) {
+            mLayoutManager = layoutManager;
+        }
+        return this;
+    }
+
+    /**
+     * 设置子元素的绘制策略, 与{@link AvatarView#setDrawStrategy(IDrawingStrategy)}一致
+     */
+    public synchronized AvatarComposer setDrawStrategy(IDrawingStrategy drawStrategy) {
+        if (drawStrategy != null) {
+            mDrawStrategy = drawStrategy;
+        }
+        return this;
+    }
+
+    public synchronized AvatarComposer setDisplayShape(@AvatarView.ShapeDisplay int displayType) {
+        mDisplayType = displayType;
+        return this;
+    }
+
+    public synchronized AvatarComposer setScaleType(@AvatarView.ScaleType int scaleType) {
+        mScaleType = scaleType;
+        return this;
+    }
+
+    /**
+     * 设置子元素离屏绘制的位图格式, 与{@link AvatarView#setBitmapConfig(int)}一致.
+     * 合成结果需要提供给调用者继续使用, 始终为ARGB_8888
+     */
+    public synchronized AvatarComposer setBitmapConfig(@AvatarView.BitmapConfig int bitmapConfig) {
+        mBitmapConfig = bitmapConfig;
+        return this;
+    }
+
+    /**
+     * 设置描边
+     *
+     * @param borderWidth 描边宽度, 单位dp
+     * @param borderColor 描边颜色
+     */
+    public synchronized AvatarComposer setBorder(Context context, float borderWidth, int borderColor) {
+        mBorderWidth = context.getResources()
+                              .getDisplayMetrics().density * borderWidth;
+        mBorderColor = borderColor;
+        return this;
+    }
+
+    /**
+     * 按当前配置合成一张新的bitmap
+     *
+     * @param resInfos 子元素资源, 图片需要已经加载完成, 没有图片的显示文字
+     * @return 合成结果, 没有资源或者尺寸无效时返回null
+     */
+    public Bitmap compose(List<ResInfo> resInfos) {
+        int width;
+        int height;
+        synchronized (this) {
+            width = mWidth;
+            height = mHeight;
+        }
+        if (width <= 0 || height <= 0 || resInfos == null || resInfos.isEmpty()) {
+            return null;
+        }
+
+        Bitmap target;
+        try {
+            target = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        return compose(resInfos, target) ? target : null;
+    }
+
+    /**
+     * 按当前配置合成到调用者提供的bitmap上, 合成区域为整个bitmap
+     *
+     * @param resInfos 子元素资源
+     * @param target   可修改的目标bitmap
+     * @return 是否完成合成
+     */
+    public boolean compose(List<ResInfo> resInfos, Bitmap target) {
+        if (target == null || !target.isMutable() || target.isRecycled()) {
+            return false;
+        }
+        return compose(resInfos, new Canvas(target), target.getWidth(), target.getHeight());
+    }
+
+    /**
+     * 按当前配置绘制到调用者提供的画布上, 从画布的原点开始
+     *
+     * @param resInfos 子元素资源
+     * @param canvas   目标画布
+     * @param width    合成区域宽度
+     * @param height   合成区域高度
+     * @return 是否完成合成
+     */
+    public boolean compose(List<ResInfo> resInfos, Canvas canvas, int width, int height) {
+        if (width <= 0 || height <= 0 || resInfos == null || resInfos.isEmpty()) {
+            return false;
+        }
+
+        DisplayInfo info = new DisplayInfo();
+        ILayoutManager layoutManager;
+        IDrawingStrategy drawStrategy;
+        synchronized (this) {
+            info.displayType = mDisplayType;
+            info.scaleType = mScaleType;
+            info.bitmapConfig = mBitmapConfig;
+            info.borderWidth = mBorderWidth;
+            info.borderColor = mBorderColor;
+            layoutManager = mLayoutManager;
+            drawStrategy = mDrawStrategy;
+        }
+        info.width = width;
+        info.height = height;
+        info.resInfos.addAll(resInfos);
+
+        // 一张图片并且使用内置策略时, 与控件一样使用单张图片的显示逻辑
+        if (info.resInfos.size() == 1 && (drawStrategy instanceof ConcreteDrawingStrategy
+                || drawStrategy instanceof ShaderDrawingStrategy)) {
+            synchronized (mNormalOnePicStrategy) {
+                mNormalOnePicStrategy.algorithm(canvas, 1, 1, info.resInfos.get(0), info);
+            }
+            return true;
+        }
+
+        LayoutBuffer layout = new LayoutBuffer(info.resInfos.size());
+        LayoutAdapter.calculateInto(layoutManager, width, height, info.resInfos.size(), layout);
+        info.layout = layout;
+        info.coordinates = LayoutAdapter.toGroups(layout, new ArrayList<ILayoutManager.LayoutInfoGroup>(), null);
+        return drawTiles(canvas, new Canvas(), drawStrategy, info, null, null);
+    }
+
+    /**
+     * 取消标记, 后台合成被取消时提前结束绘制
+     */
+    interface Cancellable {
+
+        boolean isCancelled();
+    }
+
+    /**
+     * 把每个子元素交给绘制策略, 并合成到目标画布上
+     *
+     * @param canvas     目标画布
+     * @param tileCanvas 提供给策略的离屏画布
+     * @param strategy   绘制策略, 可能同时被多个线程使用, 绘制期间加锁
+     * @param info       包含布局结果的只读快照, 从{@link DisplayInfo#layout}读取位置
+     * @param cancel     所属的后台任务, 被取消时提前结束, 不需要时传null
+     * @param record     耗时统计, 没有安装监听时传null, 不做任何计时
+     * @return 是否完整绘制了所有子元素
+     */
+    static boolean drawTiles(Canvas canvas, Canvas tileCanvas, IDrawingStrategy strategy, DisplayInfo info,
+                             Cancellable cancel, DrawRecord record) {
+        return drawTiles(canvas, tileCanvas, strategy, info, null, cancel, record);
+    }
+
+    /**
+     * 同{@link #drawTiles(Canvas, Canvas, IDrawingStrategy, DisplayInfo, Cancellable, DrawRecord)},
+     * 离屏绘制的结果保存在tiles中, 内容没有变化的位置直接复用
+     *
+     * @param tiles 子元素缓存, 需要先调用{@link TileCache#begin(long, int)}, 不需要缓存时传null.
+     *              目标是硬件加速画布时传null会为每个子元素新建bitmap
+     */
+    static boolean drawTiles(Canvas canvas, Canvas tileCanvas, IDrawingStrategy strategy, DisplayInfo info,
+                             TileCache tiles, Cancellable cancel, DrawRecord record) {
+        BitmapPool pool = BitmapPool.getInstance();
+        // 硬件加速画布只记录绘制指令, bitmap会被显示列表持续引用, 只有画到软件画布上时临时bitmap才能归还复用.
+        // 控件在硬件加速画布上总是传入tiles, 离屏bitmap跨帧保留, 不会每帧新建
+        boolean recyclable = !canvas.isHardwareAccelerated();
+
+        Bitmap.Config tileConfig = tileConfig(strategy, info);
+
+        LayoutBuffer layout = info.layout;
+        int total = layout.size();
+        if (record != null) {
+            record.tileCount += total;
+        }
+
+        synchronized (strategy) {
+            // layout 子元素布局
+            for (int index = 1; index <= total; index++) {
+                if (cancel != null && cancel.isCancelled()) {
+                    return false;
+                }
+
+                int offsetX = layout.getX(index - 1);
+                int offsetY = layout.getY(index - 1);
+                int childWidth = layout.getWidth(index - 1);
+                int childHeight = layout.getHeight(index - 1);
+
+                if (strategy instanceof IDirectDrawingStrategy) {
+                    // 直接绘制到目标画布, 不经过离屏bitmap
+                    int saveCount = canvas.save();
+                    canvas.translate(offsetX, offsetY);
+                    canvas.clipRect(0, 0, childWidth, childHeight);
+                    long start = record != null ? System.nanoTime() : 0;
+                    strategy.algorithm(canvas, total, index, info.resInfos.get(index - 1), info);
+                    if (record != null) {
+                        record.strategyNanos += System.nanoTime() - start;
+                    }
+                    canvas.restoreToCount(saveCount);
+                    continue;
+                }
+
+                ResInfo res = info.resInfos.get(index - 1);
+                Bitmap tempBmp;
+                if (tiles != null) {
+                    tempBmp = tiles.getValid(index - 1, res, total, childWidth, childHeight);
+                    if (tempBmp != null) {
+                        // 内容没有变化, 直接使用上次的结果
+                        long start = record != null ? System.nanoTime() : 0;
+                        canvas.drawBitmap(tempBmp, offsetX, offsetY, null);
+                        if (record != null) {
+                            record.blitNanos += System.nanoTime() - start;
+                            record.tilesReused++;
+                        }
+                        continue;
+                    }
+                    tempBmp = tiles.prepare(index - 1, childWidth, childHeight, tileConfig);
+                } else {
+                    tempBmp = pool.tryAcquire(childWidth, childHeight, tileConfig);
+                    if (tempBmp == null) {
+                        tempBmp = Bitmap.createBitmap(childWidth, childHeight, tileConfig);
+                        if (record != null) {
+                            record.bytesAllocated += tempBmp.getByteCount();
+                        }
+                    }
+                }
+
+                // 首先关联一个bitmap, 并把关联的canvas对外提供出去
+                tileCanvas.setBitmap(tempBmp);
+
+                // **重点**. 具体实现由使用者通过tileCanvas定义.
+                long start = record != null ? System.nanoTime() : 0;
+                strategy.algorithm(tileCanvas, total, index, res, info);
+                if (record != null) {
+                    long now = System.nanoTime();
+                    record.strategyNanos += now - start;
+                    start = now;
+                }
+
+                canvas.drawBitmap(tempBmp, offsetX, offsetY, null);
+                if (record != null) {
+                    record.blitNanos += System.nanoTime() - start;
+                }
+
+                // 取消关联的bitmap, 缓存的结果留给下次使用, 临时bitmap归还复用, 下次借出时会被擦除
+                tileCanvas.setBitmap(null);
+                if (tiles != null) {
+                    tiles.commit(index - 1);
+                } else if (recyclable) {
+                    pool.release(tempBmp);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 子元素离屏bitmap的格式. 只有内置策略绘制矩形时整块区域都会被覆盖, 可以不要透明通道;
+     * 其他形状依赖透明区域做遮罩, 自定义策略的绘制内容未知, 都使用ARGB_8888
+     */
+    static Bitmap.Config tileConfig(IDrawingStrategy strategy, DisplayInfo info) {
+        if (info.bitmapConfig != AvatarView.BITMAP_CONFIG_ARGB_8888 && info.displayType == AvatarView.TYPE_RECT
+                && strategy instanceof ConcreteDrawingStrategy) {
+            return Bitmap.Config.RGB_565;
+        }
+        return Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * 合成结果是否转为HARDWARE格式. 需要8.0及以上, 并且目标画布是硬件加速的, 传null时不检查画布
+     */
+    static boolean supportsHardware(int bitmapConfig, Canvas canvas) {
+        return bitmapConfig == AvatarView.BITMAP_CONFIG_HARDWARE && Build.VERSION.SDK_INT >= 26 && (canvas == null
+                || canvas.isHardwareAccelerated());
+    }
+
+    static boolean isHardware(Bitmap bitmap) {
+        return Build.VERSION.SDK_INT >= 26 && bitmap.getConfig() == Bitmap.Config.HARDWARE;
+    }
+
+    /**
+     * 创建合成用的bitmap. 需要转为HARDWARE时只是临时的绘制目标, 从复用池中借出
+     */
+    static Bitmap createComposite(int width, int height, boolean hardware) {
+        if (hardware) {
+            return BitmapPool.getInstance()
+                             .acquire(width, height, Bitmap.Config.ARGB_8888);
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * 把合成结果转为HARDWARE格式, 像素只保存在显存中, 原bitmap归还复用. 转换失败时返回原bitmap
+     */
+    static Bitmap toHardware(Bitmap composite) {
+        if (Build.VERSION.SDK_INT < 26) {
+            return composite;
+        }
+        Bitmap hardware = composite.copy(Bitmap.Config.HARDWARE, false);
+        if (hardware == null) {
+            return composite;
+        }
+        BitmapPool.getInstance()
+                  .release(composite);
+        return hardware;
+    }
+}
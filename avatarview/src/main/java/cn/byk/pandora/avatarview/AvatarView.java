@@ -5,35 +5,46 @@ import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.PorterDuff;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.text.TextUtils;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.View;
 
-import com.bumptech.glide.request.target.CustomTarget;
-
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import androidx.annotation.ColorInt;
 import androidx.annotation.DrawableRes;
 import androidx.annotation.IntDef;
 import androidx.core.content.res.ResourcesCompat;
+import cn.byk.pandora.avatarlayout.LayoutBuffer;
 import cn.byk.pandora.avatarview.bean.DisplayInfo;
 import cn.byk.pandora.avatarview.bean.ResInfo;
+import cn.byk.pandora.avatarview.cache.CompositeCache;
+import cn.byk.pandora.avatarview.cache.DiskCompositeCache;
+import cn.byk.pandora.avatarview.cache.MemoryBudget;
+import cn.byk.pandora.avatarview.cache.TileCache;
+import cn.byk.pandora.avatarview.layout.IBufferLayoutManager;
 import cn.byk.pandora.avatarview.layout.ILayoutManager;
+import cn.byk.pandora.avatarview.layout.LayoutAdapter;
 import cn.byk.pandora.avatarview.layout.QQLayoutManager;
+import cn.byk.pandora.avatarview.metrics.AvatarMetrics;
+import cn.byk.pandora.avatarview.metrics.DrawRecord;
 import cn.byk.pandora.avatarview.rule.ConcreteDrawingStrategy;
+import cn.byk.pandora.avatarview.rule.IDirectDrawingStrategy;
 import cn.byk.pandora.avatarview.rule.IDrawingStrategy;
 import cn.byk.pandora.avatarview.rule.NormalOnePicStrategy;
+import cn.byk.pandora.avatarview.rule.ShaderDrawingStrategy;
+import cn.byk.pandora.avatarview.source.AvatarImageSource;
 import cn.byk.pandora.avatarview.util.BitmapMan;
 import cn.byk.pandora.avatarview.util.ImageLoader;
+import cn.byk.pandora.avatarview.util.RenderExecutor;
 import cn.byk.pandora.avatarview.util.ScreenMan;
 
 /**
@@ -53,6 +64,39 @@ public class AvatarView extends View {
 
     private DisplayInfo mInfo = new DisplayInfo();
 
+    /**
+     * 绘制时提供给策略的只读快照
+     */
+    private final DisplayInfo mDrawInfo = new DisplayInfo();
+
+    /**
+     * 控件持有的布局结果, 及其对应的测量条件
+     */
+    private final ArrayList<ILayoutManager.LayoutInfoGroup> mLayoutGroups = new ArrayList<>();
+    private final ArrayList<ILayoutManager.LayoutInfoGroup> mLayoutGroupPool = new ArrayList<>();
+    private LayoutBuffer mLayoutBuffer = new LayoutBuffer();
+    private LayoutBuffer mPendingBuffer = new LayoutBuffer();
+    private ILayoutManager mMeasuredManager;
+    private int mMeasuredWidth;
+    private int mMeasuredHeight;
+    private int mMeasuredCount;
+
+    /**
+     * 上次使用的合成缓存key和对应的摘要
+     */
+    private String mCompositeKey;
+    private long mCompositeKeyHash;
+
+    /**
+     * 全局的绘制耗时统计, 没有安装时绘制过程不计时
+     */
+    private static volatile AvatarMetrics sMetrics;
+
+    /**
+     * 统计数据, 安装了统计监听后才创建, 每次绘制复用
+     */
+    private DrawRecord mDrawRecord;
+
     private int mDrawableWidth;
     private int mDrawableHeight;
 
@@ -61,6 +105,126 @@ public class AvatarView extends View {
      */
     private Canvas mExternalUseCanvas = new Canvas();
 
+    /**
+     * 多图合成到缓存bitmap时使用的画布
+     */
+    private Canvas mCompositeCanvas = new Canvas();
+
+    /**
+     * 每个子元素离屏绘制的结果, 只有一张图片变化时只重新绘制这一个位置
+     */
+    private final TileCache mTileCache = new TileCache();
+
+    /**
+     * 局部刷新的区域
+     */
+    private final Rect mDirtyRect = new Rect();
+
+    /**
+     * 多图合成结果是否使用{@link CompositeCache}缓存, 默认开启
+     */
+    private boolean mCompositeCacheEnabled = true;
+
+    /**
+     * 异步合成模式, 多张图片在后台线程合成, 完成前显示占位图
+     */
+    private boolean mAsyncRender = false;
+
+    /**
+     * 异步合成的任务和结果. 每次取消或重新提交都会增加代数, 过期任务的结果会被丢弃
+     */
+    private RenderTask mRenderTask;
+    private Future<?> mRenderFuture;
+    private String mRenderKey;
+    private int mRenderGeneration;
+    private Bitmap mAsyncComposite;
+    private String mAsyncKey;
+
+    /**
+     * 多图加载过程中的合成结果. 中间状态不放入合成缓存, 都绘制到这张控件自己持有的bitmap上
+     */
+    private Bitmap mPartialComposite;
+
+    /**
+     * 在全局内存预算中的记录, 第一次绘制时登记
+     */
+    private MemoryBudget.Entry mBudgetEntry;
+
+    /**
+     * 内存预算要求释放时的回调, 只被预算弱引用, 生命周期跟随控件
+     */
+    private final MemoryBudget.Holder mBudgetHolder = new MemoryBudget.Holder() {
+        @Override
+        public long release() {
+            return releaseBitmaps();
+        }
+
+        @Override
+        public boolean isAttached() {
+            return mAttached;
+        }
+    };
+
+    private boolean mAttached;
+
+    /**
+     * 移出窗口期间网络图片被预算释放, 重新进入窗口时需要重新加载
+     */
+    private boolean mSourcesEvicted;
+
+    /**
+     * 每次重新设置内容时递增, 加载回调与当前值不一致时说明已经过期, 直接丢弃
+     */
+    private int mLoadGeneration;
+
+    /**
+     * 当前内容发起的单张加载和多张加载, 重新设置内容和移出窗口时取消
+     */
+    private final ArrayList<AvatarImageSource.Job> mLoadJobs = new ArrayList<>(1);
+    private ImageLoader.MultiLoadTarget mMultiTarget;
+
+    /**
+     * 重新设置内容时已经完成的单张加载. 它们的图片可能还在上一帧的显示列表中, 绘制完下一帧之后再交还给来源
+     */
+    private final ArrayList<AvatarImageSource.Job> mFinishedJobs = new ArrayList<>(1);
+
+    private final Runnable mReleaseFinishedJobs = new Runnable() {
+        @Override
+        public void run() {
+            releaseFinishedJobs();
+        }
+    };
+
+    /**
+     * 单独设置的加载来源, 为null时使用{@link ImageLoader#setImageSource}设置的全局来源和内置来源
+     */
+    private AvatarImageSource mImageSource;
+
+    /**
+     * 重新发起当前网络加载的操作, 移出窗口时加载被取消, 重新进入窗口时执行
+     */
+    private Runnable mRestartLoad;
+    private boolean mLoadsInterrupted;
+
+    /**
+     * 设置时控件还没有宽高的网络加载, 在{@link #onLayout}中发起
+     */
+    private List<String> mPendingUrls;
+    private boolean mPendingFromNormal;
+
+    /**
+     * 从磁盘缓存直接显示的合成图, 此时成员图片没有加载. 配置变化后改为加载成员图片重新合成
+     */
+    private Bitmap mDiskComposite;
+    private long mDiskConfigHash;
+    private List<String> mDiskUrls;
+    private Future<?> mDiskFuture;
+
+    /**
+     * 成员图片全部加载成功并合成后写入磁盘缓存的key
+     */
+    private String mDiskStoreKey;
+
     /**
      * 默认单图片处理策略的开关标记  true: 关闭   false: 开启
      */
@@ -117,6 +281,19 @@ public class AvatarView extends View {
     @Retention(RetentionPolicy.SOURCE)
     public @interface ScaleType {}
 
+    public static final int BITMAP_CONFIG_ARGB_8888 = 0;  // 全部使用ARGB_8888
+    public static final int BITMAP_CONFIG_RGB_565 = 1;    // 加载的图片和不需要透明的矩形子元素使用RGB_565
+    public static final int BITMAP_CONFIG_HARDWARE = 2;   // 在RGB_565的基础上, 8.0及以上合成结果转为HARDWARE
+
+    @IntDef({BITMAP_CONFIG_ARGB_8888, BITMAP_CONFIG_RGB_565, BITMAP_CONFIG_HARDWARE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface BitmapConfig {}
+
+    /**
+     * 新建控件默认使用的位图格式
+     */
+    private static volatile int sDefaultBitmapConfig = BITMAP_CONFIG_ARGB_8888;
+
     /**
      * 当显示类型为矩形的时候, 缩放类型才会生效. 并且当有描边时, 缩放类型失效, 并且使用{@link #mCloseNormalOnePicLoad}的初始值通过使用单张图片的绘制逻辑才有处理效果 默认为{@link
      * #SCALE_TYPE_CENTER_INSIDE}
@@ -126,6 +303,7 @@ public class AvatarView extends View {
     public AvatarView(Context context) {
         super(context);
         mContext = context.getApplicationContext();
+        mInfo.bitmapConfig = sDefaultBitmapConfig;
     }
 
     public AvatarView(Context context, AttributeSet attrs) {
@@ -147,6 +325,8 @@ public class AvatarView extends View {
         mInfo.borderColor = typedArray.getColor(R.styleable.AvatarView_border_color, Color.BLACK);
         mCurrentDisplayShape = mInfo.displayType = typedArray.getInt(R.styleable.AvatarView_displayType, 0);
         mScaleType = mInfo.scaleType = typedArray.getInt(R.styleable.AvatarView_scaleType, 0);
+        mAsyncRender = typedArray.getBoolean(R.styleable.AvatarView_asyncRender, false);
+        mInfo.bitmapConfig = typedArray.getInt(R.styleable.AvatarView_bitmapConfig, sDefaultBitmapConfig);
 
         Drawable drawable = typedArray.getDrawable(R.styleable.AvatarView_src);
         if (drawable != null) {
@@ -276,6 +456,8 @@ public class AvatarView extends View {
 
         mInfo.height = getHeight() - mPaddingBottom - mPaddingTop;
         mInfo.width = getWidth() - mPaddingLeft - mPaddingRight;
+
+        dispatchPendingLoad();
     }
 
     @Override
@@ -285,58 +467,676 @@ public class AvatarView extends View {
         // translate padding
         canvas.translate(mPaddingLeft, mPaddingTop);
 
-        long startCur = System.nanoTime();
-        if (mInfo.resInfos.size() == 1 && !mCloseNormalOnePicLoad) {
-            mNormalOnePicStrategy.algorithm(canvas, 1, 1, mInfo.resInfos.get(0), (DisplayInfo) mInfo.clone());
-            Log.i(TAG, "一张图片执行时间: " + (System.nanoTime() - startCur) / 1000000f + "毫秒");
+        AvatarMetrics metrics = sMetrics;
+        DrawRecord record = null;
+        long start = 0;
+        if (metrics != null && (!mInfo.resInfos.isEmpty() || mDiskComposite != null)) {
+            if (mDrawRecord == null) {
+                mDrawRecord = new DrawRecord();
+            }
+            record = mDrawRecord;
+            record.reset();
+            start = System.nanoTime();
+        }
+
+        if (mDiskComposite != null) {
+            drawDiskComposite(canvas, record);
+        } else if (mInfo.resInfos.size() == 1 && !mCloseNormalOnePicLoad) {
+            mNormalOnePicStrategy.algorithm(canvas, 1, 1, mInfo.resInfos.get(0), snapshot());
+            if (record != null) {
+                record.tileCount = 1;
+                record.strategyNanos = System.nanoTime() - start;
+            }
         } else if (!mInfo.resInfos.isEmpty()) {
-            sizeMeasure();
-            if (mInfo.coordinates == null) {
+            if (mAsyncRender) {
+                drawAsync(canvas, record);
+            } else if (mCompositeCacheEnabled) {
+                drawComposite(canvas, record);
+            } else {
+                drawChildren(canvas, record);
+            }
+        }
+
+        if (record != null) {
+            record.totalNanos = System.nanoTime() - start;
+            metrics.onDraw(record);
+        }
+
+        // translate padding
+        canvas.translate(-mPaddingLeft, -mPaddingTop);
+
+        if (!mFinishedJobs.isEmpty()) {
+            RenderExecutor.postToMain(mReleaseFinishedJobs);
+        }
+
+        reportMemory();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttached = true;
+        MemoryBudget.getInstance()
+                    .install(mContext);
+
+        if (mLoadsInterrupted) {
+            mLoadsInterrupted = false;
+            mSourcesEvicted = false;
+            if (mRestartLoad != null) {
+                mRestartLoad.run();
+            }
+        } else if (mSourcesEvicted) {
+            mSourcesEvicted = false;
+            reloadEvicted();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mAttached = false;
+        cancelRender();
+        releaseFinishedJobs();
+
+        if (hasActiveLoads()) {
+            cancelLoads();
+            mLoadsInterrupted = true;
+        }
+
+        // 不在窗口中的控件仍然持有图片时留在预算中, 超出预算时由预算要求释放
+        if (mBudgetEntry != null && heldBytes() == 0) {
+            MemoryBudget.getInstance()
+                        .unregister(mBudgetEntry);
+            mBudgetEntry = null;
+        }
+    }
+
+    /**
+     * 当前内容的加载标记, 加载回调据此判断结果是否仍然属于这个控件
+     */
+    public int getLoadGeneration() {
+        return mLoadGeneration;
+    }
+
+    /**
+     * 取消当前内容发起的所有加载, 之后到达的回调都会被丢弃
+     */
+    private void cancelLoads() {
+        mLoadGeneration++;
+        mLoadsInterrupted = false;
+        mPendingUrls = null;
+
+        ImageLoader loader = ImageLoader.getInstance();
+        for (int i = 0, size = mLoadJobs.size(); i < size; i++) {
+            AvatarImageSource.Job job = mLoadJobs.get(i);
+            if (job.isDone()) {
+                // 图片可能仍在显示, 不能马上让来源收回
+                mFinishedJobs.add(job);
+            } else {
+                job.cancel();
+            }
+        }
+        mLoadJobs.clear();
+        if (!mAttached) {
+            releaseFinishedJobs();
+        }
+
+        if (mMultiTarget != null) {
+            loader.cancel(mMultiTarget);
+            mMultiTarget = null;
+        }
+
+        if (mDiskFuture != null) {
+            RenderExecutor.cancel(mDiskFuture);
+            mDiskFuture = null;
+        }
+        mDiskComposite = null;
+        mDiskUrls = null;
+        mDiskStoreKey = null;
+    }
+
+    /**
+     * 把已经不再绘制的加载结果交还给来源
+     */
+    private void releaseFinishedJobs() {
+        for (int i = 0, size = mFinishedJobs.size(); i < size; i++) {
+            mFinishedJobs.get(i)
+                         .cancel();
+        }
+        mFinishedJobs.clear();
+    }
+
+    private boolean hasActiveLoads() {
+        if (mDiskFuture != null || (mMultiTarget != null && !mMultiTarget.isComplete())) {
+            return true;
+        }
+        for (int i = 0, size = mLoadJobs.size(); i < size; i++) {
+            if (!mLoadJobs.get(i)
+                          .isDone()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 向全局内存预算上报当前持有的字节数
+     */
+    private void reportMemory() {
+        MemoryBudget budget = MemoryBudget.getInstance();
+        if (mBudgetEntry == null || !mBudgetEntry.isRegistered()) {
+            mBudgetEntry = budget.register(mBudgetHolder);
+        }
+        budget.onDrawn(mBudgetEntry, heldBytes());
+    }
+
+    /**
+     * 控件自己持有的bitmap字节数. 使用合成缓存时合成结果由缓存统计
+     */
+    private long heldBytes() {
+        long bytes = 0;
+        ArrayList<ResInfo> resInfos = mInfo.resInfos;
+        for (int i = 0, size = resInfos.size(); i < size; i++) {
+            Bitmap bitmap = resInfos.get(i)
+                                    .getBitmap();
+            if (bitmap == null || bitmap.isRecycled() || indexOfBitmap(resInfos, bitmap) < i) {
+                continue;
+            }
+            bytes += bitmap.getByteCount();
+        }
+        if (mAsyncComposite != null && !mCompositeCacheEnabled) {
+            bytes += mAsyncComposite.getByteCount();
+        }
+        if (mPartialComposite != null) {
+            bytes += mPartialComposite.getByteCount();
+        }
+        if (mDiskComposite != null) {
+            bytes += mDiskComposite.getByteCount();
+        }
+        return bytes + mTileCache.byteCount();
+    }
+
+    private static int indexOfBitmap(ArrayList<ResInfo> resInfos, Bitmap bitmap) {
+        for (int i = 0, size = resInfos.size(); i < size; i++) {
+            if (resInfos.get(i)
+                        .getBitmap() == bitmap) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 内存预算超出时释放可以重新得到的bitmap: 异步合成的结果和子元素缓存随时可以重新绘制;
+     * 不在窗口中并且全部来自网络的图片, 重新进入窗口时再加载
+     *
+     * @return 释放后仍然持有的字节数
+     */
+    private long releaseBitmaps() {
+        mAsyncComposite = null;
+        mAsyncKey = null;
+        mPartialComposite = null;
+        mTileCache.clear();
+
+        if (!mAttached && mDiskComposite != null) {
+            // 重新进入窗口时再从磁盘读取
+            mDiskComposite = null;
+            mSourcesEvicted = true;
+        }
+
+        if (!mAttached && !mInfo.resInfos.isEmpty() && collectUrls() != null) {
+            // 子元素可能是调用方传入的对象, 换成不带图片的复制品, 不修改调用方的数据
+            ArrayList<ResInfo> resInfos = mInfo.resInfos;
+            for (int i = 0, size = resInfos.size(); i < size; i++) {
+                resInfos.set(i, resInfos.get(i)
+                                        .copy()
+                                        .setBitmap(null));
+            }
+            // 图片已经不再使用, 交还给来源
+            mFinishedJobs.addAll(mLoadJobs);
+            mLoadJobs.clear();
+            releaseFinishedJobs();
+            mSourcesEvicted = true;
+        }
+        return heldBytes();
+    }
+
+    /**
+     * 所有子元素都来自网络时返回它们的地址, 否则返回null
+     */
+    private List<String> collectUrls() {
+        List<String> urls = new ArrayList<>(mInfo.resInfos.size());
+        for (ResInfo res : mInfo.resInfos) {
+            if (res.isForceText() || TextUtils.isEmpty(res.getUrl())) {
+                return null;
+            }
+            urls.add(res.getUrl());
+        }
+        return urls;
+    }
+
+    private void reloadEvicted() {
+        if (mDiskUrls != null && mDiskComposite == null) {
+            setImageUrls(mDiskUrls);
+            return;
+        }
+
+        List<String> urls = collectUrls();
+        if (urls == null) {
+            return;
+        }
+        for (ResInfo res : mInfo.resInfos) {
+            if (res.getBitmap() == null) {
+                // 优先重新执行原来的设置, 保留setMixRes中的文字配置
+                if (mRestartLoad != null) {
+                    mRestartLoad.run();
+                } else {
+                    setImageUrls(urls);
+                }
                 return;
             }
+        }
+    }
 
-            // layout 子元素布局
-            Iterator<ILayoutManager.LayoutInfoGroup> iterator = mInfo.coordinates.iterator();
-            int index = 0;
-            while (iterator.hasNext()) {
-                index++;
-                ILayoutManager.LayoutInfoGroup childInfo = iterator.next();
+    /**
+     * 获取当前配置的合成缓存key, 配置没有变化时沿用上次的key, 不再拼接字符串
+     */
+    private String obtainCompositeKey() {
+        long keyHash = CompositeCache.hashKey(mInfo, mLayoutManager, mDrawStrategy);
+        if (mCompositeKey == null || keyHash != mCompositeKeyHash) {
+            mCompositeKey = CompositeCache.buildKey(mInfo, mLayoutManager, mDrawStrategy);
+            mCompositeKeyHash = keyHash;
+        }
+        return mCompositeKey;
+    }
 
-                int offsetX = childInfo.leftTopPoint.x;
-                int offsetY = childInfo.leftTopPoint.y;
+    /**
+     * 多张图片时优先从合成缓存中取, 没有命中时把子元素合成到一张bitmap上并缓存.
+     * 多图加载还没有完成时每到达一张图片key都会变化, 中间状态只绘制到{@link #mPartialComposite}上
+     */
+    private void drawComposite(Canvas canvas, DrawRecord record) {
+        if (mInfo.width <= 0 || mInfo.height <= 0) {
+            return;
+        }
 
-                Bitmap tempBmp =
-                        Bitmap.createBitmap(childInfo.innerWidth, childInfo.innerHeight, Bitmap.Config.ARGB_8888);
+        if (!isContentComplete()) {
+            drawPartial(canvas, record);
+            return;
+        }
+        mPartialComposite = null;
+
+        CompositeCache cache = CompositeCache.getInstance();
+        String key = obtainCompositeKey();
+        Bitmap composite = cache.get(key);
+        if (composite != null && !canvas.isHardwareAccelerated() && AvatarComposer.isHardware(composite)) {
+            // 软件画布不能绘制HARDWARE格式的bitmap
+            drawChildren(canvas, record);
+            return;
+        }
+        if (composite == null) {
+            boolean hardware = AvatarComposer.supportsHardware(mInfo.bitmapConfig, canvas);
+            try {
+                composite = AvatarComposer.createComposite(mInfo.width, mInfo.height, hardware);
+            } catch (OutOfMemoryError e) {
+                e.printStackTrace();
+                // 内存不足时退化为直接绘制
+                drawChildren(canvas, record);
+                return;
+            }
+            if (record != null) {
+                record.cacheMisses++;
+                record.bytesAllocated += composite.getByteCount();
+            }
+
+            mCompositeCanvas.setBitmap(composite);
+            boolean drawn = drawChildren(mCompositeCanvas, record);
+            mCompositeCanvas.setBitmap(null);
+            if (!drawn) {
+                return;
+            }
+            if (hardware) {
+                composite = AvatarComposer.toHardware(composite);
+            }
+            cache.put(key, composite);
+        } else if (record != null) {
+            record.cacheHits++;
+        }
+        // 完整的合成结果已经缓存, 子元素缓存只会让同样的内容多占一份内存
+        mTileCache.release();
+
+        blit(canvas, composite, record);
+        storeOnDisk(composite);
+    }
+
+    /**
+     * 绘制多图加载的中间状态, 大小不变时复用同一张bitmap
+     */
+    private void drawPartial(Canvas canvas, DrawRecord record) {
+        Bitmap partial = mPartialComposite;
+        if (partial == null || partial.getWidth() != mInfo.width || partial.getHeight() != mInfo.height) {
+            try {
+                partial = AvatarComposer.createComposite(mInfo.width, mInfo.height, false);
+            } catch (OutOfMemoryError e) {
+                e.printStackTrace();
+                mPartialComposite = null;
+                drawChildren(canvas, record);
+                return;
+            }
+            mPartialComposite = partial;
+            if (record != null) {
+                record.bytesAllocated += partial.getByteCount();
+            }
+        } else {
+            partial.eraseColor(Color.TRANSPARENT);
+        }
+
+        mCompositeCanvas.setBitmap(partial);
+        boolean drawn = drawChildren(mCompositeCanvas, record);
+        mCompositeCanvas.setBitmap(null);
+        if (drawn) {
+            blit(canvas, partial, record);
+        }
+    }
+
+    /**
+     * 内容是否已经是最终状态: 没有多图加载, 或者所有位置的结果都已经交给了控件
+     */
+    private boolean isContentComplete() {
+        return mMultiTarget == null || mMultiTarget.isDelivered();
+    }
+
+    /**
+     * 把合成结果绘制到控件画布上, 并统计耗时
+     */
+    private static void blit(Canvas canvas, Bitmap composite, DrawRecord record) {
+        long start = record != null ? System.nanoTime() : 0;
+        canvas.drawBitmap(composite, 0, 0, null);
+        if (record != null) {
+            record.blitNanos += System.nanoTime() - start;
+        }
+    }
 
-                // 首先关联一个bitmap, 并把关联的canvas对外提供出去
-                mExternalUseCanvas.setBitmap(tempBmp);
+    /**
+     * 异步合成模式: 合成结果未就绪时显示占位图, 同时在后台线程合成, 完成后切回主线程刷新
+     */
+    private void drawAsync(Canvas canvas, DrawRecord record) {
+        if (mInfo.width <= 0 || mInfo.height <= 0) {
+            return;
+        }
 
-                // **重点**. 具体实现由使用者通过mExternalUseCanvas定义.
-                mDrawStrategy.algorithm(mExternalUseCanvas, mInfo.coordinates.size(), index,
-                                        mInfo.resInfos.get(index - 1), (DisplayInfo) mInfo.clone());
+        String key = obtainCompositeKey();
+        Bitmap composite = null;
+        if (key.equals(mAsyncKey)) {
+            composite = mAsyncComposite;
+        } else if (mCompositeCacheEnabled) {
+            composite = CompositeCache.getInstance()
+                                      .get(key);
+            if (composite != null) {
+                mAsyncComposite = composite;
+                mAsyncKey = key;
+            }
+        }
 
-                canvas.drawBitmap(tempBmp, offsetX, offsetY, null);
+        if (composite != null && !canvas.isHardwareAccelerated() && AvatarComposer.isHardware(composite)) {
+            drawChildren(canvas, record);
+            return;
+        }
+        if (composite != null) {
+            if (record != null) {
+                record.cacheHits++;
+            }
+            mTileCache.release();
+            blit(canvas, composite, record);
+            storeOnDisk(composite);
+            return;
+        }
 
-                // 取消关联的bitmap, 并清空对外提供的canvas
-                mExternalUseCanvas.setBitmap(null);
-                mExternalUseCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        // 配置已经变化的旧任务直接取消, 再提交新的合成任务
+        if (mRenderTask == null || !key.equals(mRenderKey)) {
+            if (record != null) {
+                record.cacheMisses++;
             }
+            cancelRender();
+            startRender(key, record);
+        }
 
-            // 清除布局
-            mInfo.coordinates = null;
-            Log.i(TAG, "多张图执行时间: " + (System.nanoTime() - startCur) / 1000000f + "毫秒");
+        if (mInfo.placeholder != null) {
+            mInfo.placeholder.setBounds(0, 0, mInfo.width, mInfo.height);
+            mInfo.placeholder.draw(canvas);
         }
+    }
 
-        // translate padding
-        canvas.translate(-mPaddingLeft, -mPaddingTop);
+    private void startRender(String key, DrawRecord record) {
+        sizeMeasure(record);
+        if (mInfo.coordinates == null) {
+            return;
+        }
+
+        // 后台线程使用独立的数据副本, 主线程后续的修改不影响正在进行的合成
+        DisplayInfo info = new DisplayInfo();
+        mInfo.copyTo(info);
+        info.layout = new LayoutBuffer(mLayoutBuffer.size());
+        info.layout.set(mLayoutBuffer);
+        info.coordinates = LayoutAdapter.toGroups(info.layout, new ArrayList<ILayoutManager.LayoutInfoGroup>(),
+                                                  null);
+
+        // 多图加载的中间状态不放入合成缓存
+        RenderTask task = new RenderTask(this, ++mRenderGeneration, key, info, mDrawStrategy,
+                                         mCompositeCacheEnabled && isContentComplete(),
+                                         AvatarComposer.supportsHardware(mInfo.bitmapConfig, null));
+        mRenderTask = task;
+        mRenderKey = key;
+        mRenderFuture = RenderExecutor.submit(task);
+    }
+
+    /**
+     * 取消正在进行的异步合成, 已经开始的任务完成后结果也会被丢弃
+     */
+    private void cancelRender() {
+        mRenderGeneration++;
+        if (mRenderTask != null) {
+            mRenderTask.cancel();
+            mRenderTask = null;
+        }
+        if (mRenderFuture != null) {
+            RenderExecutor.cancel(mRenderFuture);
+            mRenderFuture = null;
+        }
+        mRenderKey = null;
+    }
+
+    /**
+     * 后台合成完成, 在主线程调用
+     */
+    private void onRenderDone(int generation, String key, Bitmap composite) {
+        if (generation != mRenderGeneration) {
+            return;
+        }
+
+        mRenderTask = null;
+        mRenderFuture = null;
+        mRenderKey = null;
+        mAsyncComposite = composite;
+        mAsyncKey = key;
+        invalidate();
+    }
+
+    /**
+     * 按布局规则逐个绘制子元素
+     *
+     * @return 是否成功完成绘制
+     */
+    private boolean drawChildren(Canvas canvas, DrawRecord record) {
+        sizeMeasure(record);
+        if (mInfo.coordinates == null) {
+            return false;
+        }
+
+        // 硬件加速画布上离屏bitmap会被显示列表引用, 不能归还复用, 不使用合成缓存时也保存在子元素缓存中跨帧复用
+        TileCache tiles = null;
+        if ((mCompositeCacheEnabled || canvas.isHardwareAccelerated())
+                && !(mDrawStrategy instanceof IDirectDrawingStrategy)) {
+            mTileCache.begin(CompositeCache.hashConfig(mInfo, mLayoutManager, mDrawStrategy), mLayoutBuffer.size(),
+                             canvas.isHardwareAccelerated());
+            tiles = mTileCache;
+        }
+
+        AvatarComposer.drawTiles(canvas, mExternalUseCanvas, mDrawStrategy, snapshot(), tiles, null, record);
+        return true;
+    }
+
+    /**
+     * 标记一个子元素需要重新绘制, 并且只刷新它所在的区域. 自定义绘制策略的内部状态变化时使用
+     *
+     * @param index 子元素位置, 从0开始
+     */
+    public void invalidateTile(int index) {
+        mTileCache.markDirty(index);
+        invalidateTileBounds(index);
+    }
+
+    /**
+     * 刷新一个子元素所在的区域, 还没有对应的布局结果时刷新整个控件
+     */
+    private void invalidateTileBounds(int index) {
+        int count = mInfo.resInfos.size();
+        if (mInfo.coordinates == null || mMeasuredCount != count || index < 0 || index >= mLayoutBuffer.size()) {
+            invalidate();
+            return;
+        }
+
+        int left = mLayoutBuffer.getX(index) + mPaddingLeft;
+        int top = mLayoutBuffer.getY(index) + mPaddingTop;
+        mDirtyRect.set(left, top, left + mLayoutBuffer.getWidth(index), top + mLayoutBuffer.getHeight(index));
+        invalidate(mDirtyRect);
     }
 
     /**
-     * 对多张图片进行数据测量
+     * 后台合成任务
      */
-    private void sizeMeasure() {
-        // measure布局参数
-        mInfo.coordinates = mLayoutManager.calculate(mInfo.width, mInfo.height, mInfo.resInfos.size());
+    private static class RenderTask implements Runnable, AvatarComposer.Cancellable {
+
+        private final AvatarView mView;
+        private final int mGeneration;
+        private final String mKey;
+        private final DisplayInfo mInfo;
+        private final IDrawingStrategy mStrategy;
+        private final boolean mCacheEnabled;
+        private final boolean mHardware;
+
+        private volatile boolean mCancelled;
+
+        RenderTask(AvatarView view, int generation, String key, DisplayInfo info, IDrawingStrategy strategy,
+                   boolean cacheEnabled, boolean hardware) {
+            mView = view;
+            mGeneration = generation;
+            mKey = key;
+            mInfo = info;
+            mStrategy = strategy;
+            mCacheEnabled = cacheEnabled;
+            mHardware = hardware;
+        }
+
+        void cancel() {
+            mCancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+
+            AvatarMetrics metrics = sMetrics;
+            DrawRecord record = null;
+            long start = 0;
+            if (metrics != null) {
+                record = new DrawRecord();
+                record.async = true;
+                start = System.nanoTime();
+            }
+
+            Bitmap bitmap;
+            try {
+                bitmap = AvatarComposer.createComposite(mInfo.width, mInfo.height, mHardware);
+            } catch (OutOfMemoryError e) {
+                e.printStackTrace();
+                return;
+            }
+
+            if (record != null) {
+                record.bytesAllocated += bitmap.getByteCount();
+            }
+
+            if (!AvatarComposer.drawTiles(new Canvas(bitmap), new Canvas(), mStrategy, mInfo, this, record)) {
+                return;
+            }
+
+            // 提前上传纹理, 切回主线程后只需绘制
+            final Bitmap composite = mHardware ? AvatarComposer.toHardware(bitmap) : bitmap;
+            composite.prepareToDraw();
+            if (mCacheEnabled) {
+                CompositeCache.getInstance()
+                              .put(mKey, composite);
+            }
+            if (record != null) {
+                record.totalNanos = System.nanoTime() - start;
+                metrics.onDraw(record);
+            }
+
+            RenderExecutor.postToMain(new Runnable() {
+                @Override
+                public void run() {
+                    mView.onRenderDone(mGeneration, mKey, composite);
+                }
+            });
+        }
+    }
+
+    /**
+     * 返回绘制用的只读快照, 复用同一对象代替每次clone
+     */
+    private DisplayInfo snapshot() {
+        mInfo.copyTo(mDrawInfo);
+        return mDrawInfo;
+    }
+
+    /**
+     * 对多张图片进行数据测量. 内置布局规则的计算是全局缓存的查询, 每次都取最新结果, 空隙等配置修改后立即生效;
+     * 自定义布局规则在尺寸, 数量和布局规则都没有变化时沿用上次的结果
+     */
+    private void sizeMeasure(DrawRecord record) {
+        int count = mInfo.resInfos.size();
+        boolean bufferManager = mLayoutManager instanceof IBufferLayoutManager;
+        if (!bufferManager && mInfo.coordinates != null && mMeasuredManager == mLayoutManager
+                && mMeasuredWidth == mInfo.width && mMeasuredHeight == mInfo.height && mMeasuredCount == count) {
+            return;
+        }
+
+        long start = record != null ? System.nanoTime() : 0;
+        LayoutAdapter.calculateInto(mLayoutManager, mInfo.width, mInfo.height, count, mPendingBuffer);
+        if (mInfo.coordinates == null || !mPendingBuffer.contentEquals(mLayoutBuffer)) {
+            LayoutBuffer buffer = mLayoutBuffer;
+            mLayoutBuffer = mPendingBuffer;
+            mPendingBuffer = buffer;
+
+            // 复制到控件自己的对象上, 提供给仍然读取coordinates的自定义绘制策略
+            mInfo.coordinates = LayoutAdapter.toGroups(mLayoutBuffer, mLayoutGroups, mLayoutGroupPool);
+            mInfo.layout = mLayoutBuffer;
+        }
+
+        mMeasuredManager = mLayoutManager;
+        mMeasuredWidth = mInfo.width;
+        mMeasuredHeight = mInfo.height;
+        mMeasuredCount = count;
+        if (record != null) {
+            record.layoutNanos += System.nanoTime() - start;
+        }
     }
 
     /**
@@ -355,6 +1155,17 @@ public class AvatarView extends View {
         }
     }
 
+    /**
+     * 全局安装绘制耗时统计, 传null时移除. 可以使用内置的{@link cn.byk.pandora.avatarview.metrics.HistogramMetrics}
+     */
+    public static void setMetrics(AvatarMetrics metrics) {
+        sMetrics = metrics;
+    }
+
+    public static AvatarMetrics getMetrics() {
+        return sMetrics;
+    }
+
     /**
      * 返回 是否使用了默认的单张绘图显示策略.
      */
@@ -372,12 +1183,91 @@ public class AvatarView extends View {
         return this;
     }
 
+    public boolean isCompositeCacheEnabled() {
+        return mCompositeCacheEnabled;
+    }
+
+    /**
+     * 设置多张图片时是否缓存合成结果, 默认开启. 相同资源, 尺寸和显示配置的重绘或重新绑定只需绘制一次缓存的bitmap.
+     * 同时控制控件内的子元素缓存, 关闭后每次绘制都重新绘制所有子元素
+     */
+    public AvatarView setCompositeCacheEnabled(boolean enabled) {
+        mCompositeCacheEnabled = enabled;
+        if (!enabled) {
+            mTileCache.clear();
+        }
+        return this;
+    }
+
+    public boolean isAsyncRender() {
+        return mAsyncRender;
+    }
+
+    /**
+     * 设置多张图片时是否在后台线程合成, 默认关闭. 开启后合成完成前显示占位图, 重新绑定或移出窗口时会取消未完成的合成
+     */
+    public AvatarView setAsyncRender(boolean asyncRender) {
+        if (mAsyncRender != asyncRender) {
+            mAsyncRender = asyncRender;
+            if (!asyncRender) {
+                cancelRender();
+            }
+            invalidate();
+        }
+        return this;
+    }
+
+    @BitmapConfig
+    public int getBitmapConfig() {
+        return mInfo.bitmapConfig;
+    }
+
+    /**
+     * 设置位图格式, 默认取{@link #setDefaultBitmapConfig(int)}的值.
+     * 非{@link #BITMAP_CONFIG_ARGB_8888}时加载的图片优先使用RGB_565, 矩形的子元素离屏绘制也使用RGB_565,
+     * 其他形状需要透明通道仍然使用ARGB_8888; {@link #BITMAP_CONFIG_HARDWARE}时8.0及以上的合成结果转为HARDWARE
+     */
+    public AvatarView setBitmapConfig(@BitmapConfig int bitmapConfig) {
+        if (mInfo.bitmapConfig != bitmapConfig) {
+            mInfo.bitmapConfig = bitmapConfig;
+            invalidate();
+        }
+        return this;
+    }
+
+    public AvatarImageSource getImageSource() {
+        return mImageSource;
+    }
+
+    /**
+     * 设置这个控件的图片加载来源, 不能加载的地址仍然交给全局来源和内置来源. 下次设置地址时生效
+     */
+    public AvatarView setImageSource(AvatarImageSource imageSource) {
+        mImageSource = imageSource;
+        return this;
+    }
+
+    /**
+     * 设置之后新建的控件默认使用的位图格式, 见{@link #setBitmapConfig(int)}
+     */
+    public static void setDefaultBitmapConfig(@BitmapConfig int bitmapConfig) {
+        sDefaultBitmapConfig = bitmapConfig;
+    }
+
+    @BitmapConfig
+    public static int getDefaultBitmapConfig() {
+        return sDefaultBitmapConfig;
+    }
+
     /**
      * 设置子元素 绘制图片 的具体显示策略
      */
     public AvatarView setDrawStrategy(IDrawingStrategy mDrawStrategy) {
         this.mDrawStrategy = mDrawStrategy;
-        mCloseNormalOnePicLoad = !(mDrawStrategy instanceof ConcreteDrawingStrategy);
+        mCloseNormalOnePicLoad = !(mDrawStrategy instanceof ConcreteDrawingStrategy
+                                   || mDrawStrategy instanceof ShaderDrawingStrategy);
+        // 沿用当前布局规则的重叠配置
+        adjustPicRotate();
         return this;
     }
 
@@ -393,18 +1283,20 @@ public class AvatarView extends View {
      */
     public AvatarView setLayoutManager(ILayoutManager mLayoutManager) {
         this.mLayoutManager = mLayoutManager;
+        adjustPicRotate();
+        return this;
+    }
 
-        // 兼容qq群组绘制的重叠场景问题
-        if (mLayoutManager instanceof QQLayoutManager) {
-            if (mDrawStrategy instanceof ConcreteDrawingStrategy) {
-                ((ConcreteDrawingStrategy) mDrawStrategy).setIsPicRotate(true);
-            }
-        } else {
-            if (mDrawStrategy instanceof ConcreteDrawingStrategy) {
-                ((ConcreteDrawingStrategy) mDrawStrategy).setIsPicRotate(false);
-            }
+    /**
+     * 兼容qq群组绘制的重叠场景问题, 只有qq群组布局时开启重叠效果
+     */
+    private void adjustPicRotate() {
+        boolean isRotate = mLayoutManager instanceof QQLayoutManager;
+        if (mDrawStrategy instanceof ConcreteDrawingStrategy) {
+            ((ConcreteDrawingStrategy) mDrawStrategy).setIsPicRotate(isRotate);
+        } else if (mDrawStrategy instanceof ShaderDrawingStrategy) {
+            ((ShaderDrawingStrategy) mDrawStrategy).setIsPicRotate(isRotate);
         }
-        return this;
     }
 
     /**
@@ -461,16 +1353,119 @@ public class AvatarView extends View {
      * @param bitmaps 接收一个图片集合
      */
     public AvatarView setImages(List<Bitmap> bitmaps) {
+        resetLoads(null);
         mInfo.clear();
         updateForList(bitmaps, null);
         return this;
     }
 
     public AvatarView setImagesWithMix(ArrayList<ResInfo> resInfos) {
+        resetLoads(null);
         updateForListWithMix(resInfos, null);
         return this;
     }
 
+    /**
+     * 单张加载的结果, 供{@link ImageLoader}回调使用. 加载标记与当前不一致时说明内容已经重新设置, 直接丢弃
+     *
+     * @param generation 发起加载时的{@link #getLoadGeneration()}
+     */
+    public void onLoadResult(int generation, Bitmap bitmap, boolean fromNormal) {
+        if (generation == mLoadGeneration) {
+            deliverBitmap(bitmap, fromNormal);
+        }
+    }
+
+    /**
+     * 单张加载的占位图或错误图, 见{@link #onLoadResult(int, Bitmap, boolean)}
+     */
+    public void onLoadResult(int generation, Drawable drawable, boolean fromNormal) {
+        if (generation == mLoadGeneration) {
+            deliverBitmap(BitmapMan.toBitmap(drawable), fromNormal);
+        }
+    }
+
+    /**
+     * 来源收回了之前交付的图片, 使用它的子元素改为显示文字, 重新进入窗口时再加载.
+     * 见{@link AvatarImageSource.Callback#onReleased(Bitmap)}
+     *
+     * @param generation 发起加载时的{@link #getLoadGeneration()}
+     */
+    public void onLoadReleased(int generation, Bitmap bitmap) {
+        if (generation != mLoadGeneration || bitmap == null) {
+            return;
+        }
+
+        boolean dropped = false;
+        ArrayList<ResInfo> resInfos = mInfo.resInfos;
+        for (int i = 0, size = resInfos.size(); i < size; i++) {
+            ResInfo res = resInfos.get(i);
+            if (res.getBitmap() == bitmap) {
+                resInfos.set(i, res.copy()
+                                   .setBitmap(null));
+                dropped = true;
+            }
+        }
+        if (dropped) {
+            mLoadsInterrupted = mRestartLoad != null;
+            mTileCache.markAllDirty();
+            invalidate();
+        }
+    }
+
+    /**
+     * 多图加载的当前结果, 供{@link ImageLoader.MultiLoadTarget}逐张刷新使用, 过期的结果直接丢弃
+     *
+     * @param generation 发起加载时的{@link #getLoadGeneration()}
+     * @param start      起始位置
+     * @param resInfos   按请求顺序排列的结果
+     */
+    public void onLoadResults(int generation, int start, List<ResInfo> resInfos) {
+        if (generation == mLoadGeneration) {
+            deliverImages(start, resInfos);
+        }
+    }
+
+    /**
+     * 加载结果交给控件, 不取消正在进行的加载
+     */
+    private void deliverBitmap(Bitmap bitmap, boolean fromNormal) {
+        if (fromNormal) {
+            mInfo.clear();
+        }
+        updateForOne(bitmap, STR_EMPTY);
+    }
+
+    /**
+     * 从start位置开始替换为加载的结果, 前面的子元素不变. 带有地址的会匹配{@link #setMixRes(List)}中同一地址的文字配置
+     */
+    private void deliverImages(int start, List<ResInfo> resInfos) {
+        ArrayList<ResInfo> current = mInfo.resInfos;
+        ArrayList<ResInfo> previous = new ArrayList<>(current);
+        for (int i = current.size() - 1; i >= start && i >= 0; i--) {
+            current.remove(i);
+        }
+
+        for (ResInfo res : resInfos) {
+            if (TextUtils.isEmpty(res.getUrl())) {
+                mInfo.addRes(res);
+            } else {
+                mInfo.addBitmapByKey(res.getUrl(), res.getBitmap());
+            }
+        }
+
+        // 数量不变时布局不变, 只刷新内容变化的位置
+        if (previous.size() != current.size()) {
+            invalidate();
+            return;
+        }
+        for (int i = 0, size = current.size(); i < size; i++) {
+            if (CompositeCache.hashRes(0, previous.get(i)) != CompositeCache.hashRes(0, current.get(i))) {
+                invalidateTileBounds(i);
+            }
+        }
+    }
+
     /**
      * 传入drawable资源id
      */
@@ -478,6 +1473,7 @@ public class AvatarView extends View {
         if (id != 0) {
             Drawable drawable = ResourcesCompat.getDrawable(getResources(), id, null);
             if (fromNormal) {
+                resetLoads(null);
                 mInfo.clear();
             }
             if (drawable != null) {
@@ -491,12 +1487,11 @@ public class AvatarView extends View {
         return setIdRes(id, true);
     }
 
+    /**
+     * @param fromNormal 为true时替换当前内容并取消之前的加载, 为false时追加到当前内容之后
+     */
     public AvatarView setDrawable(Drawable drawable, boolean fromNormal) {
-        if (fromNormal) {
-            mInfo.clear();
-        }
-        updateForOne(BitmapMan.toBitmap(drawable), STR_EMPTY);
-        return this;
+        return setBitmap(BitmapMan.toBitmap(drawable), fromNormal);
     }
 
     public AvatarView setDrawable(Drawable drawable) {
@@ -508,9 +1503,9 @@ public class AvatarView extends View {
      */
     public AvatarView setBitmap(Bitmap bitmap, boolean fromNormal) {
         if (fromNormal) {
-            mInfo.clear();
+            resetLoads(null);
         }
-        updateForOne(bitmap, STR_EMPTY);
+        deliverBitmap(bitmap, fromNormal);
         return this;
     }
 
@@ -522,6 +1517,7 @@ public class AvatarView extends View {
      * 用于显示文字模式
      */
     public AvatarView setBriefName(String text, int textColor, int bgColor) {
+        resetLoads(null);
         mInfo.clear();
         mInfo.addRes(ResInfo.build()
                             .setForceText(true)
@@ -532,30 +1528,40 @@ public class AvatarView extends View {
         return this;
     }
 
-    /**
-     * 针对某种情况下: 控件已经初始化还没有测量获得控件宽高时, 进行了url网址图片设置, 如果这个时候控件的宽高是0, 那么进行延迟发送的方式
-     */
-    private static final int MAX_SAFETY_NUM = 7;
-    private volatile int mSafetyCurrent = 0;
-    private int mSleepTime = 5;
-
     /**
      * 对外提供直接通过url来加载图片的方法
      *
      * @param imageUrls 需要加载的图片地址数组
      */
     public void setImageUrls(final List<String> imageUrls, final boolean fromNormal) {
-        // 进行了控件未正确获得宽高属性的容错
-        if ((mInfo.width == 0 || mInfo.height == 0) && mSafetyCurrent < MAX_SAFETY_NUM) {
-            postDelayed(new Runnable() {
+        if (fromNormal) {
+            resetLoads(new Runnable() {
                 @Override
                 public void run() {
-                    Log.e(TAG, "run: 进行了一次没有正确的控件宽高属性的容错");
-                    mSleepTime <<= 1;
-                    mSafetyCurrent++;
-                    setImageUrls(imageUrls, fromNormal);
+                    setImageUrls(imageUrls, true);
                 }
-            }, mSleepTime);
+            });
+        }
+        loadImageUrls(imageUrls, fromNormal);
+    }
+
+    /**
+     * 布局完成后发起之前因为没有宽高而等待的加载
+     */
+    private void dispatchPendingLoad() {
+        if (mPendingUrls == null || mInfo.width <= 0 || mInfo.height <= 0) {
+            return;
+        }
+        List<String> urls = mPendingUrls;
+        mPendingUrls = null;
+        loadImageUrls(urls, mPendingFromNormal);
+    }
+
+    private void loadImageUrls(List<String> imageUrls, boolean fromNormal) {
+        // 还没有完成布局时按0大小加载没有意义, 先记下请求, 在onLayout得到实际宽高后再发起
+        if (mInfo.width <= 0 || mInfo.height <= 0) {
+            mPendingUrls = imageUrls;
+            mPendingFromNormal = fromNormal;
             return;
         }
 
@@ -584,6 +1590,13 @@ public class AvatarView extends View {
     }
 
     public void setMixRes(List<ResInfo> infos) {
+        final List<ResInfo> restart = new ArrayList<>(infos);
+        resetLoads(new Runnable() {
+            @Override
+            public void run() {
+                setMixRes(restart);
+            }
+        });
         mInfo.clear();
 
         List<String> urls = new ArrayList<>();
@@ -605,12 +1618,22 @@ public class AvatarView extends View {
 
         if (!urls.isEmpty()) {
             // Url集合放在最后异步加载
-            setImageUrls(urls, false);
+            loadImageUrls(urls, false);
         } else {
             invalidate();
         }
     }
 
+    /**
+     * 开始设置新的内容: 取消之前的加载, 记录重新发起本次加载的操作
+     *
+     * @param restart 移出窗口导致加载被取消后重新加载的操作, 没有网络加载时为null
+     */
+    private void resetLoads(Runnable restart) {
+        cancelLoads();
+        mRestartLoad = restart;
+    }
+
     private void updateForOne(Bitmap bitmap, String url) {
         updateForOne(bitmap, url, true);
     }
@@ -619,17 +1642,17 @@ public class AvatarView extends View {
     private void updateForOne(Bitmap bitmap, String url, boolean fromNormal) {
         // 只有有一个url字符串和关闭了单张图片的开关才有计算的意义
         if (!TextUtils.isEmpty(url)) {
-            ImageLoader loader = ImageLoader.getInstance();
-            CustomTarget<Bitmap> target;
+            int reqWid;
+            int reqHeight;
 
             if (isCloseNormalOnePicLoad()) {
                 mInfo.addBitmap(null);
-                sizeMeasure();
-                target = loader.createTarget(this, url, mInfo.coordinates.get(0).innerWidth,
-                                             mInfo.coordinates.get(0).innerHeight, fromNormal);
+                sizeMeasure(null);
+                reqWid = mInfo.childWidth(0);
+                reqHeight = mInfo.childHeight(0);
             } else {
-                int reqWid = 0;
-                int reqHeight = 0;
+                reqWid = 0;
+                reqHeight = 0;
 
                 int minSide = Math.min(mInfo.height, mInfo.width);
 
@@ -652,10 +1675,15 @@ public class AvatarView extends View {
                     reqHeight = reqWid = minSide;
                 }
 
-                target = loader.createTarget(this, url, reqWid, reqHeight, fromNormal);
             }
 
-            loader.load(mContext, url, target, mInfo.placeholder, mInfo.errorDrawable);
+            AvatarImageSource.Job job = ImageLoader.getInstance()
+                                                   .load(this, mImageSource, url, reqWid, reqHeight, fromNormal,
+                                                         mInfo.placeholder, mInfo.errorDrawable,
+                                                         mInfo.bitmapConfig != BITMAP_CONFIG_ARGB_8888);
+            if (job != null) {
+                mLoadJobs.add(job);
+            }
         } else {
             mInfo.addBitmapByKey(url, bitmap);
             invalidate();
@@ -766,18 +1794,147 @@ public class AvatarView extends View {
     }
 
     private void updateForListWithUrls(List<String> urls) {
-        int temp = Math.min(mInfo.height, mInfo.width);
-
-        // 这里进行简单的处理判断,  不做细分, 过多的不同分辨率进行缓存的key不一定很适用, 因为图片从磁盘或者网络获取的时候,
-        // 是通过inJustDecodeBounds, 做一个笼统的2的次幂缩放. 适当的取一定情况下即可.
-        if (urls.size() < 4) {
-            temp /= 2;
+        String diskKey = obtainDiskKey(urls);
+        mDiskStoreKey = diskKey;
+        if (diskKey != null && !DiskCompositeCache.getInstance()
+                                                 .isKnownMiss(diskKey)) {
+            loadFromDisk(diskKey, urls);
         } else {
-            temp /= 3;
+            loadMembers(urls);
+        }
+    }
+
+    /**
+     * 只有全部是网络图片, 并且会生成合成图时使用磁盘缓存
+     *
+     * @return 不使用磁盘缓存时返回null
+     */
+    private String obtainDiskKey(List<String> urls) {
+        if (!DiskCompositeCache.getInstance()
+                               .isOpen() || !mInfo.resInfos.isEmpty() || (!mCompositeCacheEnabled && !mAsyncRender)) {
+            return null;
+        }
+        return DiskCompositeCache.buildKey(mInfo, mLayoutManager, mDrawStrategy, urls);
+    }
+
+    /**
+     * 在解码线程读取磁盘缓存, 没有命中时再加载成员图片
+     */
+    private void loadFromDisk(final String key, final List<String> urls) {
+        final int generation = mLoadGeneration;
+        final int width = mInfo.width;
+        final int height = mInfo.height;
+        mDiskFuture = RenderExecutor.submitDecode(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap composite = DiskCompositeCache.getInstance()
+                                                           .get(key, width, height);
+                RenderExecutor.postToMain(new Runnable() {
+                    @Override
+                    public void run() {
+                        onDiskLoaded(generation, urls, composite);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onDiskLoaded(int generation, List<String> urls, Bitmap composite) {
+        if (generation != mLoadGeneration) {
+            return;
+        }
+
+        mDiskFuture = null;
+        if (composite == null || composite.getWidth() != mInfo.width || composite.getHeight() != mInfo.height) {
+            loadMembers(urls);
+            return;
+        }
+
+        mDiskComposite = composite;
+        mDiskConfigHash = CompositeCache.hashConfig(mInfo, mLayoutManager, mDrawStrategy);
+        mDiskUrls = urls;
+        // 已经在磁盘中, 不需要再写入
+        mDiskStoreKey = null;
+        invalidate();
+    }
+
+    /**
+     * 绘制从磁盘读取的合成图. 尺寸, 形状, 布局规则等配置已经变化时丢弃, 改为加载成员图片
+     */
+    private void drawDiskComposite(Canvas canvas, DrawRecord record) {
+        if (CompositeCache.hashConfig(mInfo, mLayoutManager, mDrawStrategy) == mDiskConfigHash) {
+            if (record != null) {
+                record.cacheHits++;
+            }
+            mTileCache.release();
+            blit(canvas, mDiskComposite, record);
+            return;
+        }
+
+        final List<String> urls = mDiskUrls;
+        final int generation = mLoadGeneration;
+        mDiskComposite = null;
+        // 不在绘制过程中发起加载
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation == mLoadGeneration && urls != null) {
+                    setImageUrls(urls);
+                }
+            }
+        });
+    }
+
+    /**
+     * 成员图片全部加载成功后把合成图写入磁盘缓存, 每次设置内容最多写入一次
+     */
+    private void storeOnDisk(final Bitmap composite) {
+        if (mDiskStoreKey == null || mMultiTarget == null || mMultiTarget.hasFailed() || !isContentComplete()) {
+            return;
+        }
+        for (ResInfo res : mInfo.resInfos) {
+            if (TextUtils.isEmpty(res.getUrl()) || res.getBitmap() == null) {
+                return;
+            }
+        }
+
+        final String key = mDiskStoreKey;
+        mDiskStoreKey = null;
+        RenderExecutor.submitDecode(new Runnable() {
+            @Override
+            public void run() {
+                DiskCompositeCache.getInstance()
+                                  .put(key, composite);
+            }
+        });
+    }
+
+    private void loadMembers(List<String> urls) {
+        // 按布局规则的实际结果确定每个位置的大小, 加载的图片刚好等于子元素大小, 绘制时不再缩放
+        int count = urls.size();
+        LayoutBuffer layout = new LayoutBuffer(count);
+        LayoutAdapter.calculateInto(mLayoutManager, mInfo.width, mInfo.height, count, layout);
+
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            // 超出布局规则上限的位置不会显示, 沿用最后一个位置的大小
+            int slot = Math.min(i, layout.size() - 1);
+            if (slot >= 0) {
+                widths[i] = layout.getWidth(slot);
+                heights[i] = layout.getHeight(slot);
+            }
         }
 
         ImageLoader loader = ImageLoader.getInstance();
-        ImageLoader.MultiLoadTarget target = loader.createMultiTarget(this, temp, temp);
+        ImageLoader.MultiLoadTarget target = loader.createMultiTarget(this, widths, heights)
+                                                   .preferRgb565(mInfo.bitmapConfig != BITMAP_CONFIG_ARGB_8888)
+                                                   .source(mImageSource)
+                                                   .start(mInfo.resInfos.size());
+        if (mMultiTarget != null) {
+            loader.cancel(mMultiTarget);
+        }
+        mMultiTarget = target;
         loader.load(mContext, urls, target, mInfo.placeholder, mInfo.errorDrawable);
     }
 
@@ -6,6 +6,7 @@ import android.graphics.drawable.Drawable;
 
 import java.util.ArrayList;
 
+import cn.byk.pandora.avatarlayout.LayoutBuffer;
 import cn.byk.pandora.avatarview.layout.ILayoutManager;
 
 /**
@@ -22,9 +23,11 @@ public class DisplayInfo implements Cloneable {
     public int borderColor = Color.WHITE;                   // 描边颜色
 
     public ArrayList<ILayoutManager.LayoutInfoGroup> coordinates;  // 测量过程返回的每个元素的对应位置信息
+    public LayoutBuffer layout;                             // 与coordinates相同的布局结果, 以int数组存放
 
     public int displayType;                                 // 子元素的显示类型
     public int scaleType;                                   // 矩形的缩放类型
+    public int bitmapConfig;                                // 位图格式, 见AvatarView.BitmapConfig
 
     public Drawable placeholder;
     public Drawable errorDrawable;
@@ -45,19 +48,31 @@ public class DisplayInfo implements Cloneable {
                             .setBitmap(bitmap));
     }
 
+    /**
+     * 放入一个按地址加载的结果. 有地址时总是占用一个位置并保留地址, 加载失败没有图片时显示文字, 后面的位置不会错位.
+     * 放入的是控件自己的副本, 不修改调用者传入的资源, 调用者为这个地址设置的文字和颜色会被沿用
+     */
     public void addBitmapByKey(String url, Bitmap bitmap) {
-        boolean notExist = true;
-        for (ResInfo res : resInfoForUrls) {
-            if (res.getUrl()
-                   .equals(url)) {
-                addRes(res.setBitmap(bitmap));
-                notExist = false;
+        if (url == null || url.length() == 0) {
+            if (bitmap != null) {
+                addBitmap(bitmap);
             }
+            return;
         }
 
-        if (notExist && bitmap != null) {
-            addBitmap(bitmap);
+        ResInfo res = ResInfo.build()
+                             .setUrl(url)
+                             .setBitmap(bitmap);
+        for (int i = 0, size = resInfoForUrls.size(); i < size; i++) {
+            ResInfo named = resInfoForUrls.get(i);
+            if (url.equals(named.getUrl())) {
+                res.setBriefText(named.getBriefText())
+                   .setTextColor(named.getTextColor())
+                   .setBgColor(named.getBgColor());
+                break;
+            }
         }
+        addRes(res);
     }
 
     public void addUrl(String url) {
@@ -67,6 +82,50 @@ public class DisplayInfo implements Cloneable {
 
     public void clear() {
         resInfos.clear();
+        resInfoForUrls.clear();
+    }
+
+    /**
+     * 第index个子元素可绘制的宽度, 优先从布局缓冲区读取
+     */
+    public int childWidth(int index) {
+        return layout != null ? layout.getWidth(index) : coordinates.get(index).innerWidth;
+    }
+
+    /**
+     * 第index个子元素可绘制的高度, 优先从布局缓冲区读取
+     */
+    public int childHeight(int index) {
+        return layout != null ? layout.getHeight(index) : coordinates.get(index).innerHeight;
+    }
+
+    /**
+     * 把当前状态复制到一个复用的对象上, 作为绘制时提供给策略的只读快照. 只复制引用, 不创建新对象
+     *
+     * @param target 接收状态的对象, 绘制策略不应修改它
+     */
+    public void copyTo(DisplayInfo target) {
+        target.height = height;
+        target.width = width;
+        target.borderWidth = borderWidth;
+        target.borderColor = borderColor;
+        target.coordinates = coordinates;
+        target.layout = layout;
+        target.displayType = displayType;
+        target.scaleType = scaleType;
+        target.bitmapConfig = bitmapConfig;
+        target.placeholder = placeholder;
+        target.errorDrawable = errorDrawable;
+
+        copyList(resInfos, target.resInfos);
+        copyList(resInfoForUrls, target.resInfoForUrls);
+    }
+
+    private static void copyList(ArrayList<ResInfo> from, ArrayList<ResInfo> to) {
+        to.clear();
+        for (int i = 0, size = from.size(); i < size; i++) {
+            to.add(from.get(i));
+        }
     }
 
     @Override
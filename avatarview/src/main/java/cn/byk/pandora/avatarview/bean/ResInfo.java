@@ -85,4 +85,18 @@ public class ResInfo {
         this.url = url;
         return this;
     }
+
+    /**
+     * 复制一份, 修改复制品不影响原来的对象
+     */
+    public ResInfo copy() {
+        ResInfo res = new ResInfo();
+        res.isForceText = isForceText;
+        res.briefText = briefText;
+        res.textColor = textColor;
+        res.bgColor = bgColor;
+        res.bitmap = bitmap;
+        res.url = url;
+        return res;
+    }
 }
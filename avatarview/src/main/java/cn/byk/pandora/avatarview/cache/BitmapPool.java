@@ -0,0 +1,150 @@
+package cn.byk.pandora.avatarview.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayList;
+
+/**
+ * 按尺寸复用的临时bitmap池, 供子元素离屏绘制使用, 按字节数限制大小
+ */
+public class BitmapPool {
+
+    /**
+     * 默认最大占用为进程可用内存的1/32
+     */
+    private static final int DEFAULT_DIVISOR = 32;
+
+    private static volatile BitmapPool sInstance;
+
+    /**
+     * 空闲的bitmap, 越靠后越是最近归还的. 同时存在的尺寸种类很少, 线性查找即可, 也避免了装箱的key
+     */
+    private final ArrayList<Bitmap> mFree = new ArrayList<>();
+
+    private long mMaxBytes;
+    private long mCurrentBytes;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    private BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    public static BitmapPool getInstance() {
+        if (sInstance == null) {
+            synchronized (BitmapPool.class) {
+                if (sInstance == null) {
+                    sInstance = new BitmapPool(Runtime.getRuntime()
+                                                      .maxMemory() / DEFAULT_DIVISOR);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 借出一张指定尺寸的透明bitmap, 池中没有时新建
+     */
+    public Bitmap acquire(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = tryAcquire(width, height, config);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * 只从池中借出, 没有合适的bitmap时返回null, 由调用者决定是否新建
+     */
+    public Bitmap tryAcquire(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take(width, height, config);
+        if (bitmap != null) {
+            bitmap.eraseColor(Color.TRANSPARENT);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 借出一张给解码器复用({@link android.graphics.BitmapFactory.Options#inBitmap})的bitmap, 像素会被解码结果完整覆盖, 不做擦除
+     */
+    public Bitmap tryAcquireForDecode(int width, int height, Bitmap.Config config) {
+        return take(width, height, config);
+    }
+
+    private synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+        for (int i = mFree.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = mFree.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                mFree.remove(i);
+                mCurrentBytes -= sizeOf(bitmap);
+                mHitCount++;
+                return bitmap;
+            }
+        }
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * 归还借出的bitmap, 超出上限时淘汰最久未使用的
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+
+        long size = sizeOf(bitmap);
+        if (size > mMaxBytes) {
+            return;
+        }
+
+        mFree.add(bitmap);
+        mCurrentBytes += size;
+        trimToSize(mMaxBytes);
+    }
+
+    public synchronized void clear() {
+        mFree.clear();
+        mCurrentBytes = 0;
+    }
+
+    /**
+     * 设置池的最大字节数, 超出部分立即淘汰
+     */
+    public synchronized void setMaxSize(long maxBytes) {
+        mMaxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    public synchronized long getMaxSize() {
+        return mMaxBytes;
+    }
+
+    public synchronized long size() {
+        return mCurrentBytes;
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    /**
+     * 淘汰最久未使用的, 直到不超过指定字节数, 不改变上限
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        while (mCurrentBytes > maxBytes && !mFree.isEmpty()) {
+            Bitmap eldest = mFree.remove(0);
+            mCurrentBytes -= sizeOf(eldest);
+        }
+    }
+
+    private static long sizeOf(Bitmap bitmap) {
+        return bitmap.getByteCount();
+    }
+}
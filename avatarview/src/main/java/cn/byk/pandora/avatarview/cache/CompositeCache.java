@@ -0,0 +1,319 @@
+package cn.byk.pandora.avatarview.cache;
+
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cn.byk.pandora.avatarview.bean.DisplayInfo;
+import cn.byk.pandora.avatarview.bean.ResInfo;
+import cn.byk.pandora.avatarview.layout.ILayoutManager;
+import cn.byk.pandora.avatarview.layout.ParametricLayoutManager;
+import cn.byk.pandora.avatarview.layout.QQLayoutManager;
+import cn.byk.pandora.avatarview.layout.WeChatLayoutManager;
+import cn.byk.pandora.avatarview.rule.ConcreteDrawingStrategy;
+import cn.byk.pandora.avatarview.rule.IDrawingStrategy;
+import cn.byk.pandora.avatarview.rule.ShaderDrawingStrategy;
+
+/**
+ * 多图合成结果的内存缓存, 按字节数限制大小的LRU, 所有AvatarView共用
+ */
+public class CompositeCache {
+
+    /**
+     * 默认最大占用为进程可用内存的1/16
+     */
+    private static final int DEFAULT_DIVISOR = 16;
+
+    private static final long HASH_SEED = 0xcbf29ce484222325L;
+    private static final long HASH_PRIME = 0x100000001b3L;
+
+    private static volatile CompositeCache sInstance;
+
+    private final LinkedHashMap<String, Bitmap> mMap = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long mMaxBytes;
+    private long mCurrentBytes;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    private CompositeCache(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    public static CompositeCache getInstance() {
+        if (sInstance == null) {
+            synchronized (CompositeCache.class) {
+                if (sInstance == null) {
+                    sInstance = new CompositeCache(Runtime.getRuntime()
+                                                          .maxMemory() / DEFAULT_DIVISOR);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    public synchronized Bitmap get(String key) {
+        if (key == null) {
+            return null;
+        }
+
+        Bitmap bitmap = mMap.get(key);
+        if (bitmap != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return bitmap;
+    }
+
+    public synchronized void put(String key, Bitmap bitmap) {
+        if (key == null || bitmap == null) {
+            return;
+        }
+
+        long size = sizeOf(bitmap);
+        // 单张超出上限的直接不缓存
+        if (size > mMaxBytes) {
+            return;
+        }
+
+        Bitmap previous = mMap.put(key, bitmap);
+        mCurrentBytes += size;
+        if (previous != null) {
+            mCurrentBytes -= sizeOf(previous);
+        }
+        trimToSize(mMaxBytes);
+    }
+
+    public synchronized void remove(String key) {
+        Bitmap previous = mMap.remove(key);
+        if (previous != null) {
+            mCurrentBytes -= sizeOf(previous);
+        }
+    }
+
+    public synchronized void clear() {
+        mMap.clear();
+        mCurrentBytes = 0;
+    }
+
+    /**
+     * 设置缓存的最大字节数, 超出部分立即按LRU淘汰
+     */
+    public synchronized void setMaxSize(long maxBytes) {
+        mMaxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    public synchronized long getMaxSize() {
+        return mMaxBytes;
+    }
+
+    public synchronized long size() {
+        return mCurrentBytes;
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    /**
+     * 淘汰最久未使用的, 直到不超过指定字节数, 不改变上限
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<String, Bitmap>> iterator = mMap.entrySet()
+                                                           .iterator();
+        while (mCurrentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Bitmap> eldest = iterator.next();
+            mCurrentBytes -= sizeOf(eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    private static long sizeOf(Bitmap bitmap) {
+        return bitmap.getByteCount();
+    }
+
+    /**
+     * 生成合成图的缓存key, 由子元素资源, 控件尺寸, 显示类型, 描边, 缩放类型, 布局规则和绘制策略共同决定
+     */
+    public static String buildKey(DisplayInfo info, ILayoutManager layoutManager, IDrawingStrategy strategy) {
+        StringBuilder builder = new StringBuilder(128);
+        builder.append(info.width)
+               .append('x')
+               .append(info.height)
+               .append('|')
+               .append(info.displayType)
+               .append('|')
+               .append(info.scaleType)
+               .append('|')
+               .append(info.borderWidth)
+               .append(':')
+               .append(info.borderColor)
+               .append('|')
+               .append(info.bitmapConfig)
+               .append('|');
+        appendLayoutManager(builder, layoutManager);
+        builder.append('|');
+        appendStrategy(builder, strategy);
+
+        for (ResInfo res : info.resInfos) {
+            builder.append('|');
+            appendRes(builder, res);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 计算与{@link #buildKey}相同输入的64位摘要, 不创建任何对象. 用于判断上次生成的key是否仍然有效, 避免每帧拼接字符串
+     */
+    public static long hashKey(DisplayInfo info, ILayoutManager layoutManager, IDrawingStrategy strategy) {
+        long hash = hashConfig(info, layoutManager, strategy);
+        for (int i = 0, size = info.resInfos.size(); i < size; i++) {
+            hash = hashRes(hash, info.resInfos.get(i));
+        }
+        return hash;
+    }
+
+    /**
+     * 只包含尺寸, 显示配置, 位图格式, 布局规则和绘制策略的摘要, 不包含子元素资源.
+     * 位图格式决定了离屏绘制和合成结果的格式, 不同格式的结果不能混用
+     */
+    public static long hashConfig(DisplayInfo info, ILayoutManager layoutManager, IDrawingStrategy strategy) {
+        long hash = mix(HASH_SEED, info.width);
+        hash = mix(hash, info.height);
+        hash = mix(hash, info.displayType);
+        hash = mix(hash, info.scaleType);
+        hash = mix(hash, Float.floatToIntBits(info.borderWidth));
+        hash = mix(hash, info.borderColor);
+        hash = mix(hash, info.bitmapConfig);
+
+        if (layoutManager instanceof QQLayoutManager) {
+            hash = mix(hash, 1);
+        } else if (layoutManager instanceof WeChatLayoutManager) {
+            hash = mix(hash, 2);
+            hash = mix(hash, Float.floatToIntBits(((WeChatLayoutManager) layoutManager).getSpacing()));
+        } else if (layoutManager instanceof ParametricLayoutManager) {
+            ParametricLayoutManager parametric = (ParametricLayoutManager) layoutManager;
+            hash = mix(hash, 5);
+            hash = mix(hash, parametric.getMode());
+            hash = mix(hash, Float.floatToIntBits(parametric.getSpacing()));
+        } else {
+            hash = mix(hash, System.identityHashCode(layoutManager));
+        }
+
+        if (strategy instanceof ConcreteDrawingStrategy) {
+            ConcreteDrawingStrategy concrete = (ConcreteDrawingStrategy) strategy;
+            hash = mix(hash, 3);
+            hash = mix(hash, Float.floatToIntBits(concrete.getSpacing()));
+            hash = mix(hash, concrete.isPicRotate() ? 1 : 0);
+        } else if (strategy instanceof ShaderDrawingStrategy) {
+            ShaderDrawingStrategy shader = (ShaderDrawingStrategy) strategy;
+            hash = mix(hash, 4);
+            hash = mix(hash, Float.floatToIntBits(shader.getSpacing()));
+            hash = mix(hash, shader.isPicRotate() ? 1 : 0);
+        } else {
+            hash = mix(hash, System.identityHashCode(strategy));
+        }
+        return hash;
+    }
+
+    /**
+     * 把一个子元素资源混入摘要
+     */
+    public static long hashRes(long hash, ResInfo res) {
+        Bitmap bitmap = res.getBitmap();
+        if (res.isForceText() || bitmap == null) {
+            hash = mix(hash, res.getBriefText() == null ? 0 : res.getBriefText()
+                                                                 .hashCode());
+            hash = mix(hash, res.getTextColor());
+            hash = mix(hash, res.getBgColor());
+        } else {
+            hash = mix(hash, System.identityHashCode(bitmap));
+            hash = mix(hash, bitmap.getGenerationId());
+            hash = mix(hash, bitmap.getWidth());
+            hash = mix(hash, bitmap.getHeight());
+        }
+        return hash;
+    }
+
+    /**
+     * 把一个整数混入摘要
+     */
+    public static long mix(long hash, int value) {
+        return (hash ^ value) * HASH_PRIME;
+    }
+
+    private static void appendRes(StringBuilder builder, ResInfo res) {
+        Bitmap bitmap = res.getBitmap();
+        if (res.isForceText() || bitmap == null) {
+            // 文字头像
+            builder.append('t')
+                   .append(res.getBriefText())
+                   .append(':')
+                   .append(res.getTextColor())
+                   .append(':')
+                   .append(res.getBgColor());
+        } else {
+            // 图片以bitmap对象本身为准, 同一url加载失败和成功的结果不能混用
+            builder.append('b')
+                   .append(System.identityHashCode(bitmap))
+                   .append(':')
+                   .append(bitmap.getGenerationId())
+                   .append(':')
+                   .append(bitmap.getWidth())
+                   .append('x')
+                   .append(bitmap.getHeight());
+        }
+    }
+
+    private static void appendLayoutManager(StringBuilder builder, ILayoutManager layoutManager) {
+        if (layoutManager instanceof QQLayoutManager) {
+            builder.append("qq");
+        } else if (layoutManager instanceof WeChatLayoutManager) {
+            builder.append("wechat:")
+                   .append(((WeChatLayoutManager) layoutManager).getSpacing());
+        } else if (layoutManager instanceof ParametricLayoutManager) {
+            ParametricLayoutManager parametric = (ParametricLayoutManager) layoutManager;
+            builder.append("parametric:")
+                   .append(parametric.getMode())
+                   .append(':')
+                   .append(parametric.getSpacing());
+        } else {
+            // 自定义的布局规则无法判断内部配置, 按实例区分
+            appendIdentity(builder, layoutManager);
+        }
+    }
+
+    private static void appendStrategy(StringBuilder builder, IDrawingStrategy strategy) {
+        if (strategy instanceof ConcreteDrawingStrategy) {
+            ConcreteDrawingStrategy concrete = (ConcreteDrawingStrategy) strategy;
+            builder.append("concrete:")
+                   .append(concrete.getSpacing())
+                   .append(':')
+                   .append(concrete.isPicRotate());
+        } else if (strategy instanceof ShaderDrawingStrategy) {
+            ShaderDrawingStrategy shader = (ShaderDrawingStrategy) strategy;
+            builder.append("shader:")
+                   .append(shader.getSpacing())
+                   .append(':')
+                   .append(shader.isPicRotate());
+        } else {
+            appendIdentity(builder, strategy);
+        }
+    }
+
+    private static void appendIdentity(StringBuilder builder, Object object) {
+        builder.append(object.getClass()
+                             .getName())
+               .append('@')
+               .append(System.identityHashCode(object));
+    }
+}
@@ -0,0 +1,418 @@
+package cn.byk.pandora.avatarview.cache;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cn.byk.pandora.avatarview.bean.DisplayInfo;
+import cn.byk.pandora.avatarview.layout.ILayoutManager;
+import cn.byk.pandora.avatarview.layout.ParametricLayoutManager;
+import cn.byk.pandora.avatarview.layout.QQLayoutManager;
+import cn.byk.pandora.avatarview.layout.WeChatLayoutManager;
+import cn.byk.pandora.avatarview.rule.ConcreteDrawingStrategy;
+import cn.byk.pandora.avatarview.rule.IDrawingStrategy;
+import cn.byk.pandora.avatarview.rule.ShaderDrawingStrategy;
+import cn.byk.pandora.avatarview.util.BitmapMan;
+
+/**
+ * 多图合成结果的磁盘缓存. 冷启动时按控件大小解码一次即可显示, 不需要加载每张成员图片再重新合成
+ * <p>
+ * key为成员地址和绘制配置的64位摘要, 文件为WebP格式(4.3以下为PNG). 按总字节数限制大小, 超出时淘汰最久未使用的,
+ * 索引文件按使用顺序记录每个文件的大小. 默认关闭, 调用{@link #open(Context)}后生效. 读写磁盘的方法不能在主线程调用
+ */
+public class DiskCompositeCache {
+
+    private static final String DIR_NAME = "avatar_composite";
+    private static final String INDEX_NAME = "index";
+    private static final String INDEX_TEMP_NAME = "index.tmp";
+    private static final String INDEX_MAGIC = "AvatarCompositeCache";
+    private static final int INDEX_VERSION = 1;
+
+    /**
+     * 默认最大占用10M
+     */
+    private static final long DEFAULT_MAX_BYTES = 10 * 1024 * 1024;
+
+    private static final int QUALITY = 90;
+
+    private static final Bitmap.CompressFormat FORMAT;
+    private static final String EXTENSION;
+
+    static {
+        if (Build.VERSION.SDK_INT >= 30) {
+            FORMAT = Bitmap.CompressFormat.WEBP_LOSSY;
+            EXTENSION = ".webp";
+        } else if (Build.VERSION.SDK_INT >= 18) {
+            // 4.3开始WebP支持透明通道
+            FORMAT = Bitmap.CompressFormat.WEBP;
+            EXTENSION = ".webp";
+        } else {
+            FORMAT = Bitmap.CompressFormat.PNG;
+            EXTENSION = ".png";
+        }
+    }
+
+    private static volatile DiskCompositeCache sInstance;
+
+    /**
+     * key到文件字节数, 按使用顺序排列
+     */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(32, 0.75f, true);
+
+    private volatile File mDirectory;
+    private long mMaxBytes = DEFAULT_MAX_BYTES;
+    private long mCurrentBytes;
+
+    private boolean mIndexLoaded;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    private DiskCompositeCache() {}
+
+    public static DiskCompositeCache getInstance() {
+        if (sInstance == null) {
+            synchronized (DiskCompositeCache.class) {
+                if (sInstance == null) {
+                    sInstance = new DiskCompositeCache();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 在应用缓存目录下启用, 使用默认大小
+     */
+    public void open(Context context) {
+        open(new File(context.getCacheDir(), DIR_NAME), DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * 启用磁盘缓存, 索引在第一次读写时加载
+     *
+     * @param directory 缓存目录, 只存放这个缓存的文件
+     * @param maxBytes  最大字节数
+     */
+    public synchronized void open(File directory, long maxBytes) {
+        if (!directory.equals(mDirectory)) {
+            mEntries.clear();
+            mCurrentBytes = 0;
+            mIndexLoaded = false;
+        }
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    public boolean isOpen() {
+        return mDirectory != null;
+    }
+
+    /**
+     * 生成key. 自定义的布局规则和绘制策略只能按实例区分, 进程重启后不再相同, 此时返回null, 不使用磁盘缓存
+     *
+     * @param urls 成员图片的地址, 按显示顺序
+     */
+    public static String buildKey(DisplayInfo info, ILayoutManager layoutManager, IDrawingStrategy strategy,
+                                  List<String> urls) {
+        if (!(layoutManager instanceof QQLayoutManager || layoutManager instanceof WeChatLayoutManager
+                || layoutManager instanceof ParametricLayoutManager)) {
+            return null;
+        }
+        if (!(strategy instanceof ConcreteDrawingStrategy || strategy instanceof ShaderDrawingStrategy)) {
+            return null;
+        }
+
+        long hash = CompositeCache.hashConfig(info, layoutManager, strategy);
+        hash = CompositeCache.mix(hash, urls.size());
+        for (int i = 0, size = urls.size(); i < size; i++) {
+            String url = urls.get(i);
+            hash = CompositeCache.mix(hash, url.length());
+            for (int j = 0, length = url.length(); j < length; j++) {
+                hash = CompositeCache.mix(hash, url.charAt(j));
+            }
+        }
+        return Long.toHexString(hash);
+    }
+
+    /**
+     * 索引已经加载并且确定没有这个key, 不需要读磁盘. 可以在主线程调用
+     */
+    public synchronized boolean isKnownMiss(String key) {
+        return mIndexLoaded && !mEntries.containsKey(key);
+    }
+
+    /**
+     * 按目标大小解码缓存的合成图
+     *
+     * @return 没有缓存或者文件已损坏时返回null
+     */
+    public Bitmap get(String key, int reqWidth, int reqHeight) {
+        File file;
+        synchronized (this) {
+            if (!ensureIndex()) {
+                return null;
+            }
+            if (mEntries.get(key) == null) {
+                mMissCount++;
+                return null;
+            }
+            mHitCount++;
+            file = fileFor(key);
+        }
+
+        Bitmap bitmap = BitmapMan.decodeFile(file.getPath(), reqWidth, reqHeight, false);
+        if (bitmap == null) {
+            remove(key);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 写入合成图, 已经存在时只更新使用顺序
+     */
+    public void put(String key, Bitmap bitmap) {
+        File directory;
+        synchronized (this) {
+            if (!ensureIndex()) {
+                return;
+            }
+            if (mEntries.get(key) != null) {
+                return;
+            }
+            directory = mDirectory;
+        }
+
+        // 先写临时文件再改名, 写入中断时不会留下不完整的缓存
+        File temp = new File(directory, key + ".tmp");
+        File file = new File(directory, key + EXTENSION);
+        boolean written;
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            written = bitmap.compress(FORMAT, QUALITY, out);
+        } catch (IOException | IllegalStateException e) {
+            written = false;
+        } finally {
+            closeQuietly(out);
+        }
+        if (!written || !temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+
+        synchronized (this) {
+            if (directory != mDirectory) {
+                file.delete();
+                return;
+            }
+            long size = file.length();
+            Long previous = mEntries.put(key, size);
+            mCurrentBytes += size - (previous != null ? previous : 0);
+            trimToSize(mMaxBytes);
+            writeIndex();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        Long previous = mEntries.remove(key);
+        if (previous != null) {
+            mCurrentBytes -= previous;
+            fileFor(key).delete();
+            writeIndex();
+        }
+    }
+
+    /**
+     * 删除所有缓存文件和索引
+     */
+    public synchronized void clear() {
+        File directory = mDirectory;
+        mEntries.clear();
+        mCurrentBytes = 0;
+        if (directory != null) {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * 设置最大字节数, 超出部分立即淘汰
+     */
+    public synchronized void setMaxSize(long maxBytes) {
+        mMaxBytes = maxBytes;
+        if (mIndexLoaded) {
+            trimToSize(maxBytes);
+            writeIndex();
+        }
+    }
+
+    public synchronized long getMaxSize() {
+        return mMaxBytes;
+    }
+
+    public synchronized long size() {
+        return mCurrentBytes;
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    private void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet()
+                                                             .iterator();
+        while (mCurrentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            mCurrentBytes -= eldest.getValue();
+            fileFor(eldest.getKey()).delete();
+            iterator.remove();
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(mDirectory, key + EXTENSION);
+    }
+
+    /**
+     * 第一次使用时读取索引, 丢弃索引中已经不存在的文件和索引之外的残留文件
+     *
+     * @return 缓存是否可用
+     */
+    private boolean ensureIndex() {
+        File directory = mDirectory;
+        if (directory == null) {
+            return false;
+        }
+        if (mIndexLoaded) {
+            return true;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return false;
+        }
+
+        readIndex(directory);
+
+        HashSet<String> known = new HashSet<>(mEntries.size() * 2);
+        for (String key : mEntries.keySet()) {
+            known.add(key + EXTENSION);
+        }
+        known.add(INDEX_NAME);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!known.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+
+        mIndexLoaded = true;
+        trimToSize(mMaxBytes);
+        return true;
+    }
+
+    /**
+     * 索引格式: 第一行为标识和版本, 之后每行一个文件的key和字节数, 最久未使用的在前
+     */
+    private void readIndex(File directory) {
+        mEntries.clear();
+        mCurrentBytes = 0;
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(directory, INDEX_NAME)),
+                                                              "UTF-8"));
+            if (!(INDEX_MAGIC + " " + INDEX_VERSION).equals(reader.readLine())) {
+                return;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                String key = line.substring(0, space);
+                File file = new File(directory, key + EXTENSION);
+                if (!file.isFile()) {
+                    continue;
+                }
+                // 以实际文件大小为准
+                long size = file.length();
+                Long previous = mEntries.put(key, size);
+                mCurrentBytes += size - (previous != null ? previous : 0);
+            }
+        } catch (IOException e) {
+            // 索引不存在或已损坏时从空缓存开始, 残留文件随后被清理
+            mEntries.clear();
+            mCurrentBytes = 0;
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private void writeIndex() {
+        File directory = mDirectory;
+        if (directory == null) {
+            return;
+        }
+
+        File temp = new File(directory, INDEX_TEMP_NAME);
+        BufferedWriter writer = null;
+        boolean written = false;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+            writer.write(INDEX_MAGIC + " " + INDEX_VERSION);
+            writer.newLine();
+            for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write(' ');
+                writer.write(String.valueOf(entry.getValue()));
+                writer.newLine();
+            }
+            writer.flush();
+            written = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeQuietly(writer);
+        }
+
+        if (!written || !temp.renameTo(new File(directory, INDEX_NAME))) {
+            temp.delete();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package cn.byk.pandora.avatarview.cache;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.view.animation.AnimationUtils;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+import cn.byk.pandora.avatarview.util.RenderExecutor;
+
+/**
+ * 进程内头像bitmap的总内存预算, 统计{@link BitmapPool}, {@link CompositeCache}和每个控件持有的图片
+ * <p>
+ * 超出预算时依次清理复用池, 合成缓存, 最后按最久未绘制的顺序通知不在窗口中的控件释放可以重新得到的图片.
+ * 收缩总是切到主线程执行, 绘制中超出预算时在这一帧结束后再收缩, 这一帧绘制过的控件不会被要求释放.
+ * 通过{@link #install(Context)}注册后, 系统内存紧张时按{@link ComponentCallbacks2}的等级主动收缩
+ */
+public class MemoryBudget implements ComponentCallbacks2 {
+
+    /**
+     * 默认预算为进程可用内存的1/4
+     */
+    private static final int DEFAULT_DIVISOR = 4;
+
+    private static volatile MemoryBudget sInstance;
+
+    private final ArrayList<Entry> mEntries = new ArrayList<>();
+
+    private long mMaxBytes;
+
+    /**
+     * 所有控件最近一次上报的字节数之和
+     */
+    private long mHeldBytes;
+
+    private boolean mInstalled;
+
+    private int mTrimCount;
+
+    /**
+     * 已经切到主线程等待执行的收缩, 以及收缩时跳过的起始绘制时间
+     */
+    private boolean mTrimPending;
+    private long mTrimSkipFrom;
+
+    private final Runnable mTrimTask = new Runnable() {
+        @Override
+        public void run() {
+            long maxBytes;
+            long skipFrom;
+            synchronized (MemoryBudget.this) {
+                mTrimPending = false;
+                maxBytes = mMaxBytes;
+                skipFrom = mTrimSkipFrom;
+            }
+            trim(maxBytes, skipFrom);
+        }
+    };
+
+    private MemoryBudget(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    public static MemoryBudget getInstance() {
+        if (sInstance == null) {
+            synchronized (MemoryBudget.class) {
+                if (sInstance == null) {
+                    sInstance = new MemoryBudget(Runtime.getRuntime()
+                                                        .maxMemory() / DEFAULT_DIVISOR);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 注册系统内存回调, 重复调用只注册一次
+     */
+    public void install(Context context) {
+        synchronized (this) {
+            if (mInstalled) {
+                return;
+            }
+            mInstalled = true;
+        }
+        context.getApplicationContext()
+               .registerComponentCallbacks(this);
+    }
+
+    /**
+     * 持有bitmap的一方, 通常是控件. 预算只保存它的弱引用
+     */
+    public interface Holder {
+
+        /**
+         * 释放可以重新得到的bitmap, 在主线程调用
+         *
+         * @return 释放后仍然持有的字节数
+         */
+        long release();
+
+        /**
+         * 是否还在窗口中. 在窗口中的持有者释放后下一帧会立即重新得到同样的图片, 收缩时跳过
+         */
+        boolean isAttached();
+    }
+
+    /**
+     * 每个持有者在预算中的记录, 由持有者保存并在绘制时更新
+     */
+    public static class Entry {
+
+        private final WeakReference<Holder> mHolder;
+        private long mBytes;
+        private long mLastDrawn;
+
+        /**
+         * 最近一次被要求释放的收缩批次, 同一批次内不重复处理
+         */
+        private int mTrimPass;
+
+        private volatile boolean mRegistered = true;
+
+        private Entry(Holder holder) {
+            mHolder = new WeakReference<>(holder);
+        }
+
+        /**
+         * 是否仍在预算中. 释放后不再持有bitmap的记录会被移除, 持有者再次绘制时需要重新登记
+         */
+        public boolean isRegistered() {
+            return mRegistered;
+        }
+    }
+
+    /**
+     * 登记一个持有者, 返回的记录需要由持有者自己保存
+     */
+    public synchronized Entry register(Holder holder) {
+        Entry entry = new Entry(holder);
+        mEntries.add(entry);
+        return entry;
+    }
+
+    /**
+     * 持有者不再持有任何bitmap时移除记录
+     */
+    public synchronized void unregister(Entry entry) {
+        if (entry != null && mEntries.remove(entry)) {
+            mHeldBytes -= entry.mBytes;
+            entry.mBytes = 0;
+            entry.mRegistered = false;
+        }
+    }
+
+    /**
+     * 持有者完成一次绘制, 更新持有的字节数和最近绘制时间, 超出预算时在这一帧结束后收缩.
+     * 绘制时间取当前帧的时间, 同一帧绘制的持有者时间相同
+     */
+    public void onDrawn(Entry entry, long bytes) {
+        boolean over;
+        long frameTime = AnimationUtils.currentAnimationTimeMillis();
+        synchronized (this) {
+            if (!entry.mRegistered) {
+                return;
+            }
+            mHeldBytes += bytes - entry.mBytes;
+            entry.mBytes = bytes;
+            entry.mLastDrawn = frameTime;
+            over = size() > mMaxBytes;
+        }
+        if (over) {
+            requestTrim(frameTime);
+        }
+    }
+
+    /**
+     * 切到主线程收缩到当前预算以内, 多次请求合并为一次
+     *
+     * @param skipFrom 这个时间及之后绘制过的持有者不释放
+     */
+    private void requestTrim(long skipFrom) {
+        synchronized (this) {
+            mTrimSkipFrom = mTrimPending ? Math.min(mTrimSkipFrom, skipFrom) : skipFrom;
+            if (mTrimPending) {
+                return;
+            }
+            mTrimPending = true;
+        }
+        RenderExecutor.postToMain(mTrimTask);
+    }
+
+    /**
+     * 收缩到指定字节数以内, 不在主线程调用时切到主线程执行
+     */
+    public void trimToSize(final long maxBytes) {
+        RenderExecutor.runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                trim(maxBytes, Long.MAX_VALUE);
+            }
+        });
+    }
+
+    /**
+     * 先清理复用池, 再按LRU清理合成缓存, 最后通知最久未绘制并且不在窗口中的持有者释放. 在主线程调用
+     */
+    private void trim(long maxBytes, long skipFrom) {
+        BitmapPool pool = BitmapPool.getInstance();
+        CompositeCache cache = CompositeCache.getInstance();
+        int pass;
+        synchronized (this) {
+            pass = ++mTrimCount;
+            // 已被回收的控件不能再释放, 它们上报的字节数不应该挤占复用池和合成缓存的预算
+            pruneCleared();
+        }
+
+        long others = cache.size() + heldBytes();
+        pool.trimToSize(Math.max(0, maxBytes - others));
+
+        others = pool.size() + heldBytes();
+        cache.trimToSize(Math.max(0, maxBytes - others));
+
+        while (size() > maxBytes) {
+            Entry eldest = eldestEntry(pass, skipFrom);
+            if (eldest == null) {
+                return;
+            }
+
+            Holder holder = eldest.mHolder.get();
+            long remain = holder != null ? holder.release() : 0;
+            if (remain <= 0) {
+                unregister(eldest);
+            } else {
+                synchronized (this) {
+                    if (eldest.mRegistered) {
+                        mHeldBytes += remain - eldest.mBytes;
+                        eldest.mBytes = remain;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 移除持有者已被回收的记录, 在持有锁时调用
+     */
+    private void pruneCleared() {
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            Entry entry = mEntries.get(i);
+            if (entry.mHolder.get() == null) {
+                mEntries.remove(i);
+                mHeldBytes -= entry.mBytes;
+                entry.mBytes = 0;
+                entry.mRegistered = false;
+            }
+        }
+    }
+
+    /**
+     * 找出本批次还没有处理过的最久未绘制的记录, 已被回收的持有者直接移除.
+     * 在窗口中的和skipFrom之后绘制过的持有者不参与
+     */
+    private synchronized Entry eldestEntry(int pass, long skipFrom) {
+        Entry eldest = null;
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            Entry entry = mEntries.get(i);
+            Holder holder = entry.mHolder.get();
+            if (holder == null) {
+                mEntries.remove(i);
+                mHeldBytes -= entry.mBytes;
+                entry.mBytes = 0;
+                entry.mRegistered = false;
+                continue;
+            }
+            if (entry.mLastDrawn >= skipFrom || holder.isAttached()) {
+                continue;
+            }
+            if (entry.mBytes > 0 && entry.mTrimPass != pass && (eldest == null
+                    || entry.mLastDrawn < eldest.mLastDrawn)) {
+                eldest = entry;
+            }
+        }
+        if (eldest != null) {
+            eldest.mTrimPass = pass;
+        }
+        return eldest;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            // 进程即将被回收或者前台内存严重不足, 全部释放
+            trimToSize(0);
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(getMaxSize() / 2);
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_MODERATE) {
+            // 界面不可见, 复用池中的临时bitmap短时间内用不到
+            BitmapPool.getInstance()
+                      .clear();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        trimToSize(0);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {}
+
+    /**
+     * 设置预算的最大字节数, 超出部分切到主线程收缩
+     */
+    public void setMaxSize(long maxBytes) {
+        synchronized (this) {
+            mMaxBytes = maxBytes;
+        }
+        requestTrim(Long.MAX_VALUE);
+    }
+
+    public synchronized long getMaxSize() {
+        return mMaxBytes;
+    }
+
+    /**
+     * 当前统计的总字节数. 同一张bitmap被多个控件显示时会重复计算, 结果偏大
+     */
+    public synchronized long size() {
+        return mHeldBytes + BitmapPool.getInstance()
+                                      .size() + CompositeCache.getInstance()
+                                                              .size();
+    }
+
+    /**
+     * 控件持有的字节数
+     */
+    public synchronized long heldBytes() {
+        return mHeldBytes;
+    }
+
+    /**
+     * 登记的持有者数量, 包括已被回收但还没有在收缩时清理的
+     */
+    public synchronized int holderCount() {
+        return mEntries.size();
+    }
+
+    public synchronized int trimCount() {
+        return mTrimCount;
+    }
+}
@@ -0,0 +1,185 @@
+package cn.byk.pandora.avatarview.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import cn.byk.pandora.avatarview.bean.ResInfo;
+
+/**
+ * 控件内每个子元素离屏绘制结果的缓存, 每个位置一张bitmap和一个脏标记
+ * <p>
+ * 位置的内容摘要由整体配置, 子元素资源, 子元素总数, 位置和大小决定, 摘要不变并且没有被标记为脏时直接复用,
+ * 只有一张图片变化时只需要重新绘制这一个位置. 只在主线程使用
+ */
+public class TileCache {
+
+    private Bitmap[] mTiles = new Bitmap[0];
+    private long[] mSignatures = new long[0];
+    private long[] mPending = new long[0];
+    private boolean[] mDirty = new boolean[0];
+
+    /**
+     * 当前整体配置的摘要, 变化时所有位置失效
+     */
+    private long mConfigHash;
+
+    private int mRenderCount;
+
+    /**
+     * 缓存的bitmap曾经绘制到硬件加速的画布上, 可能仍被显示列表引用, 不能归还复用池
+     */
+    private boolean mShared;
+
+    /**
+     * 开始一次绘制
+     *
+     * @param configHash     不包含子元素资源的整体配置摘要, 见{@link CompositeCache#hashConfig}
+     * @param count          子元素个数, 多出的位置会被丢弃
+     * @param hardwareCanvas 这次绘制的目标是否是硬件加速的画布
+     */
+    public void begin(long configHash, int count, boolean hardwareCanvas) {
+        mShared |= hardwareCanvas;
+        if (count != mTiles.length) {
+            resize(count);
+        }
+        if (configHash != mConfigHash) {
+            mConfigHash = configHash;
+            markAllDirty();
+        }
+    }
+
+    private void resize(int count) {
+        Bitmap[] tiles = new Bitmap[count];
+        long[] signatures = new long[count];
+        boolean[] dirty = new boolean[count];
+        int keep = Math.min(count, mTiles.length);
+        System.arraycopy(mTiles, 0, tiles, 0, keep);
+        System.arraycopy(mSignatures, 0, signatures, 0, keep);
+        System.arraycopy(mDirty, 0, dirty, 0, keep);
+        for (int i = keep; i < count; i++) {
+            dirty[i] = true;
+        }
+        mTiles = tiles;
+        mSignatures = signatures;
+        mPending = new long[count];
+        mDirty = dirty;
+    }
+
+    /**
+     * 返回仍然有效的缓存, 需要重新绘制时返回null
+     *
+     * @param index 位置, 从0开始
+     * @param res   该位置的资源
+     * @param total 子元素总数, QQ群组样式中同一位置在不同总数下的形状不同
+     */
+    public Bitmap getValid(int index, ResInfo res, int total, int width, int height) {
+        long signature = CompositeCache.hashRes(mConfigHash, res);
+        signature = CompositeCache.mix(signature, total);
+        signature = CompositeCache.mix(signature, index);
+        signature = CompositeCache.mix(signature, width);
+        signature = CompositeCache.mix(signature, height);
+        mPending[index] = signature;
+
+        Bitmap tile = mTiles[index];
+        if (mDirty[index] || tile == null || tile.isRecycled() || signature != mSignatures[index]
+                || tile.getWidth() != width || tile.getHeight() != height) {
+            return null;
+        }
+        return tile;
+    }
+
+    /**
+     * 取得用于重新绘制的透明bitmap, 尺寸和格式相同时复用原来的
+     */
+    public Bitmap prepare(int index, int width, int height, Bitmap.Config config) {
+        Bitmap tile = mTiles[index];
+        if (tile != null && !tile.isRecycled() && tile.isMutable() && tile.getWidth() == width
+                && tile.getHeight() == height && tile.getConfig() == config) {
+            tile.eraseColor(Color.TRANSPARENT);
+            return tile;
+        }
+
+        // 旧的bitmap可能还被硬件加速的显示列表引用, 不归还复用池
+        tile = BitmapPool.getInstance()
+                         .tryAcquire(width, height, config);
+        if (tile == null) {
+            tile = Bitmap.createBitmap(width, height, config);
+        }
+        mTiles[index] = tile;
+        return tile;
+    }
+
+    /**
+     * 绘制完成, 记录摘要并清除脏标记
+     */
+    public void commit(int index) {
+        mSignatures[index] = mPending[index];
+        mDirty[index] = false;
+        mRenderCount++;
+    }
+
+    /**
+     * 绘制没有完成时放弃这个位置的结果
+     */
+    public void discard(int index) {
+        mDirty[index] = true;
+    }
+
+    public void markDirty(int index) {
+        if (index >= 0 && index < mDirty.length) {
+            mDirty[index] = true;
+        }
+    }
+
+    public void markAllDirty() {
+        for (int i = 0; i < mDirty.length; i++) {
+            mDirty[i] = true;
+        }
+    }
+
+    /**
+     * 丢弃所有缓存的bitmap
+     */
+    public void clear() {
+        for (int i = 0; i < mTiles.length; i++) {
+            mTiles[i] = null;
+            mDirty[i] = true;
+        }
+        mShared = false;
+    }
+
+    /**
+     * 完整的合成结果已经缓存, 不再需要逐个位置的缓存. 只在离屏画布上绘制过的bitmap归还复用池, 否则直接丢弃
+     */
+    public void release() {
+        BitmapPool pool = mShared ? null : BitmapPool.getInstance();
+        for (int i = 0; i < mTiles.length; i++) {
+            Bitmap tile = mTiles[i];
+            if (tile != null) {
+                if (pool != null) {
+                    pool.release(tile);
+                }
+                mTiles[i] = null;
+                mDirty[i] = true;
+            }
+        }
+        mShared = false;
+    }
+
+    public long byteCount() {
+        long bytes = 0;
+        for (Bitmap tile : mTiles) {
+            if (tile != null && !tile.isRecycled()) {
+                bytes += tile.getByteCount();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 累计重新绘制的次数
+     */
+    public int renderCount() {
+        return mRenderCount;
+    }
+}
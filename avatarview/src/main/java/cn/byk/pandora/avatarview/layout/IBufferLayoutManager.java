@@ -0,0 +1,20 @@
+package cn.byk.pandora.avatarview.layout;
+
+import cn.byk.pandora.avatarlayout.LayoutBuffer;
+
+/**
+ * 可以把布局结果直接写入复用缓冲区的布局规则, 计算时不创建集合和{@link LayoutInfoGroup}对象.
+ * 只实现{@link ILayoutManager}的自定义布局规则通过{@link LayoutAdapter}转换, 仍然可以使用
+ */
+public interface IBufferLayoutManager extends ILayoutManager {
+
+    /**
+     * 布局measure排列计算方法, 结果写入out
+     *
+     * @param viewWidth  控件的宽
+     * @param viewHeight 控件的高
+     * @param viewNum    控件图片的数量
+     * @param out        接收结果的缓冲区, 原有内容会被清空
+     */
+    void calculateInto(int viewWidth, int viewHeight, int viewNum, LayoutBuffer out);
+}
@@ -4,6 +4,9 @@ import android.graphics.Point;
 
 import java.util.ArrayList;
 
+import cn.byk.pandora.avatarlayout.LayoutResult;
+import cn.byk.pandora.avatarlayout.LayoutTile;
+
 /**
  * Author :  suzeyu Time   :  2016-11-29  下午9:03 Blog   :  http://szysky.com GitHub :  https://github.com/suzeyu1992
  * ClassDescription : 控件多个图片时 布局排列的位置计算接口
@@ -37,7 +40,29 @@ public interface ILayoutManager {
          */
         public Point leftTopPoint = new Point();
         public Point rightBottomPoint = new Point();
-        
+
+        /**
+         * 从纯Java布局模块的计算结果复制
+         */
+        public LayoutInfoGroup set(LayoutTile tile) {
+            innerWidth = tile.innerWidth;
+            innerHeight = tile.innerHeight;
+            leftTopPoint.set(tile.left, tile.top);
+            rightBottomPoint.set(tile.right, tile.bottom);
+            return this;
+        }
+
+        /**
+         * 从共享的布局结果复制第index个子元素
+         */
+        public LayoutInfoGroup set(LayoutResult result, int index) {
+            innerWidth = result.getInnerWidth(index);
+            innerHeight = result.getInnerHeight(index);
+            leftTopPoint.set(result.getLeft(index), result.getTop(index));
+            rightBottomPoint.set(result.getRight(index), result.getBottom(index));
+            return this;
+        }
+
         @Override
         protected Object clone() throws CloneNotSupportedException {
             LayoutInfoGroup clone = (LayoutInfoGroup) super.clone();
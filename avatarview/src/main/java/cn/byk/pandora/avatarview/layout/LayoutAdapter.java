@@ -0,0 +1,64 @@
+package cn.byk.pandora.avatarview.layout;
+
+import java.util.ArrayList;
+
+import cn.byk.pandora.avatarlayout.LayoutBuffer;
+
+/**
+ * 布局缓冲区和{@link ILayoutManager.LayoutInfoGroup}集合之间的转换
+ */
+public class LayoutAdapter {
+
+    /**
+     * 计算布局并写入缓冲区, 只实现了集合接口的布局规则转换后写入. 布局规则内部可能有复用的对象, 计算期间加锁
+     */
+    public static void calculateInto(ILayoutManager layoutManager, int viewWidth, int viewHeight, int viewNum,
+                                     LayoutBuffer out) {
+        synchronized (layoutManager) {
+            if (layoutManager instanceof IBufferLayoutManager) {
+                ((IBufferLayoutManager) layoutManager).calculateInto(viewWidth, viewHeight, viewNum, out);
+                return;
+            }
+
+            ArrayList<ILayoutManager.LayoutInfoGroup> result = layoutManager.calculate(viewWidth, viewHeight, viewNum);
+            out.reset(result.size());
+            for (int i = 0, size = result.size(); i < size; i++) {
+                ILayoutManager.LayoutInfoGroup group = result.get(i);
+                out.add(group.leftTopPoint.x, group.leftTopPoint.y, group.innerWidth, group.innerHeight);
+            }
+        }
+    }
+
+    /**
+     * 把缓冲区转换为集合, 提供给仍然读取{@link cn.byk.pandora.avatarview.bean.DisplayInfo#coordinates}的自定义绘制策略
+     *
+     * @param buffer 布局结果
+     * @param out    接收结果的集合, 原有内容会被清空
+     * @param pool   复用的元素对象, 不足时补充, 传null时每次新建
+     */
+    public static ArrayList<ILayoutManager.LayoutInfoGroup> toGroups(LayoutBuffer buffer,
+                                                                    ArrayList<ILayoutManager.LayoutInfoGroup> out,
+                                                                    ArrayList<ILayoutManager.LayoutInfoGroup> pool) {
+        out.clear();
+        for (int i = 0, size = buffer.size(); i < size; i++) {
+            ILayoutManager.LayoutInfoGroup group;
+            if (pool == null) {
+                group = new ILayoutManager.LayoutInfoGroup();
+            } else {
+                if (pool.size() <= i) {
+                    pool.add(new ILayoutManager.LayoutInfoGroup());
+                }
+                group = pool.get(i);
+            }
+
+            int x = buffer.getX(i);
+            int y = buffer.getY(i);
+            group.innerWidth = buffer.getWidth(i);
+            group.innerHeight = buffer.getHeight(i);
+            group.leftTopPoint.set(x, y);
+            group.rightBottomPoint.set(x + group.innerWidth, y + group.innerHeight);
+            out.add(group);
+        }
+        return out;
+    }
+}
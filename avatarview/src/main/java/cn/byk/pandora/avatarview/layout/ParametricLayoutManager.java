@@ -0,0 +1,73 @@
+package cn.byk.pandora.avatarview.layout;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+
+import cn.byk.pandora.avatarlayout.LayoutBuffer;
+import cn.byk.pandora.avatarlayout.LayoutResult;
+import cn.byk.pandora.avatarlayout.ParametricLayoutEngine;
+
+/**
+ * 不限数量的群组布局, 支持网格, 环形, 蜂窝密排三种排列, 计算由{@link ParametricLayoutEngine}完成
+ */
+public class ParametricLayoutManager implements IBufferLayoutManager {
+
+    public static final int MODE_GRID = ParametricLayoutEngine.MODE_GRID;
+    public static final int MODE_RING = ParametricLayoutEngine.MODE_RING;
+    public static final int MODE_PACKED = ParametricLayoutEngine.MODE_PACKED;
+
+    private final ParametricLayoutEngine mEngine;
+
+    public ParametricLayoutManager(Context context) {
+        this(context, MODE_GRID);
+    }
+
+    /**
+     * @param mode 排列方式 {@link #MODE_GRID}, {@link #MODE_RING}, {@link #MODE_PACKED}
+     */
+    public ParametricLayoutManager(Context context, int mode) {
+        mEngine = new ParametricLayoutEngine(mode, context.getResources()
+                                                          .getDisplayMetrics().density);
+    }
+
+    @Override
+    public ArrayList<LayoutInfoGroup> calculate(int viewWidth, int viewHeight, int viewNum) {
+        // 相同参数的结果全局共享, 返回的是副本, 修改不会影响缓存
+        LayoutResult result = mEngine.layout(viewWidth, viewHeight, viewNum);
+
+        ArrayList<LayoutInfoGroup> infos = new ArrayList<>(result.size());
+        for (int i = 0, size = result.size(); i < size; i++) {
+            infos.add(new LayoutInfoGroup().set(result, i));
+        }
+        return infos;
+    }
+
+    @Override
+    public void calculateInto(int viewWidth, int viewHeight, int viewNum, LayoutBuffer out) {
+        mEngine.layout(viewWidth, viewHeight, viewNum)
+               .copyTo(out);
+    }
+
+    public int getMode() {
+        return mEngine.getMode();
+    }
+
+    /**
+     * 获取子元素的空隙
+     *
+     * @return 返回单位dp
+     */
+    public float getSpacing() {
+        return mEngine.getSpacing();
+    }
+
+    /**
+     * 设置子元素间的空隙
+     *
+     * @param spacing 单位dp
+     */
+    public void setSpacing(float spacing) {
+        mEngine.setSpacing(spacing);
+    }
+}
@@ -0,0 +1,15 @@
+package cn.byk.pandora.avatarview.metrics;
+
+/**
+ * 绘制耗时统计的监听接口, 通过{@link cn.byk.pandora.avatarview.AvatarView#setMetrics(AvatarMetrics)}全局安装.
+ * 没有安装时绘制过程不计时, 也不创建任何对象
+ */
+public interface AvatarMetrics {
+
+    /**
+     * 每次绘制结束后回调. 同步合成时在主线程, 异步合成时在后台合成线程, 实现需要线程安全并尽量轻量
+     *
+     * @param record 本次绘制的数据, 对象会被复用, 不要在回调之外持有
+     */
+    void onDraw(DrawRecord record);
+}
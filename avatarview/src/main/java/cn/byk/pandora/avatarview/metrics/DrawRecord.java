@@ -0,0 +1,29 @@
+package cn.byk.pandora.avatarview.metrics;
+
+/**
+ * 单次绘制的统计数据, 时间单位为纳秒
+ */
+public class DrawRecord {
+
+    public long totalNanos;                                 // 整次绘制的耗时
+    public long layoutNanos;                                // 布局计算的耗时
+    public long strategyNanos;                              // 所有子元素绘制策略的耗时
+    public long blitNanos;                                  // 子元素和合成结果绘制到画布上的耗时
+
+    public int tileCount;                                   // 本次绘制的子元素个数
+    public int tilesReused;                                 // 直接复用子元素缓存, 没有重新绘制的个数
+    public long bytesAllocated;                             // 本次新建bitmap占用的字节数
+
+    public int cacheHits;                                   // 合成缓存命中次数
+    public int cacheMisses;                                 // 合成缓存未命中次数
+
+    public boolean async;                                   // 是否为后台线程的合成
+
+    public void reset() {
+        totalNanos = layoutNanos = strategyNanos = blitNanos = 0;
+        tileCount = tilesReused = 0;
+        bytesAllocated = 0;
+        cacheHits = cacheMisses = 0;
+        async = false;
+    }
+}
@@ -0,0 +1,137 @@
+package cn.byk.pandora.avatarview.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 内置的直方图统计, 可在线上采样使用
+ * <p>
+ * 每个阶段的耗时按微秒的2的幂次分桶, 记录时只有几次原子自增, 不加锁也不创建对象. 分位数取所在桶的上限, 精度为2倍以内
+ */
+public class HistogramMetrics implements AvatarMetrics {
+
+    public static final int PHASE_TOTAL = 0;
+    public static final int PHASE_LAYOUT = 1;
+    public static final int PHASE_STRATEGY = 2;
+    public static final int PHASE_BLIT = 3;
+
+    private static final int PHASE_COUNT = 4;
+
+    /**
+     * 桶的数量, 第i个桶记录 [2^(i-1), 2^i) 微秒, 最后一个桶记录所有更大的值
+     */
+    private static final int BUCKET_COUNT = 32;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(PHASE_COUNT * BUCKET_COUNT);
+
+    private final AtomicLong mDrawCount = new AtomicLong();
+    private final AtomicLong mTileCount = new AtomicLong();
+    private final AtomicLong mBytesAllocated = new AtomicLong();
+    private final AtomicLong mCacheHits = new AtomicLong();
+    private final AtomicLong mCacheMisses = new AtomicLong();
+
+    @Override
+    public void onDraw(DrawRecord record) {
+        mDrawCount.incrementAndGet();
+        record(PHASE_TOTAL, record.totalNanos);
+        record(PHASE_LAYOUT, record.layoutNanos);
+        record(PHASE_STRATEGY, record.strategyNanos);
+        record(PHASE_BLIT, record.blitNanos);
+
+        if (record.tileCount > 0) {
+            mTileCount.addAndGet(record.tileCount);
+        }
+        if (record.bytesAllocated > 0) {
+            mBytesAllocated.addAndGet(record.bytesAllocated);
+        }
+        if (record.cacheHits > 0) {
+            mCacheHits.addAndGet(record.cacheHits);
+        }
+        if (record.cacheMisses > 0) {
+            mCacheMisses.addAndGet(record.cacheMisses);
+        }
+    }
+
+    private void record(int phase, long nanos) {
+        long micros = nanos >> 10;
+        int bucket = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        if (bucket >= BUCKET_COUNT) {
+            bucket = BUCKET_COUNT - 1;
+        }
+        mBuckets.incrementAndGet(phase * BUCKET_COUNT + bucket);
+    }
+
+    /**
+     * 获取某个阶段耗时的分位数
+     *
+     * @param phase      阶段, {@link #PHASE_TOTAL}等
+     * @param percentile 分位, 取值0~1, 如0.99
+     * @return 所在桶的上限, 单位纳秒, 没有数据时返回0
+     */
+    public long getPercentileNanos(int phase, double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mBuckets.get(phase * BUCKET_COUNT + i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target && counts[i] > 0) {
+                return (1L << i) << 10;
+            }
+        }
+        return (1L << (BUCKET_COUNT - 1)) << 10;
+    }
+
+    /**
+     * 获取某个阶段各个桶的计数, 用于上报完整的分布
+     */
+    public long[] getBuckets(int phase) {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mBuckets.get(phase * BUCKET_COUNT + i);
+        }
+        return counts;
+    }
+
+    public long getDrawCount() {
+        return mDrawCount.get();
+    }
+
+    public long getTileCount() {
+        return mTileCount.get();
+    }
+
+    public long getBytesAllocated() {
+        return mBytesAllocated.get();
+    }
+
+    public long getCacheHits() {
+        return mCacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return mCacheMisses.get();
+    }
+
+    /**
+     * 清空统计, 一般在每次采样上报之后调用
+     */
+    public void reset() {
+        for (int i = 0; i < mBuckets.length(); i++) {
+            mBuckets.set(i, 0);
+        }
+        mDrawCount.set(0);
+        mTileCount.set(0);
+        mBytesAllocated.set(0);
+        mCacheHits.set(0);
+        mCacheMisses.set(0);
+    }
+}
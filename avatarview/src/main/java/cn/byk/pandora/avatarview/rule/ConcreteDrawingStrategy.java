@@ -10,10 +10,10 @@ import android.graphics.PorterDuffXfermode;
 import android.graphics.RectF;
 import android.text.TextPaint;
 
+import cn.byk.pandora.avatarlayout.ScaleMan;
 import cn.byk.pandora.avatarview.AvatarView;
 import cn.byk.pandora.avatarview.bean.DisplayInfo;
 import cn.byk.pandora.avatarview.bean.ResInfo;
-import cn.byk.pandora.avatarview.layout.ILayoutManager;
 import cn.byk.pandora.avatarview.util.GraphsMan;
 
 /**
@@ -27,7 +27,7 @@ import cn.byk.pandora.avatarview.util.GraphsMan;
 public class ConcreteDrawingStrategy implements IDrawingStrategy {
 
     /** qq群组的不同数量时的对应旋转数组 **/
-    private static final float[][] ROTATIONS = {new float[]{360.0f}, new float[]{45.0f, 360.0f},
+    static final float[][] ROTATIONS = {new float[]{360.0f}, new float[]{45.0f, 360.0f},
                                                 new float[]{120.0f, 0.0f, -120.0f},
                                                 new float[]{90.0f, 179.0f, -90.0f, 0.0f},
                                                 new float[]{144.0f, 72.0f, 0.0f, -72.0f, -144.0f},};
@@ -57,6 +57,21 @@ public class ConcreteDrawingStrategy implements IDrawingStrategy {
 
     private boolean mIsDrawText;
 
+    private static final PorterDuffXfermode XFERMODE_CLEAR = new PorterDuffXfermode(PorterDuff.Mode.CLEAR);
+
+    /**
+     * 子元素bitmap缩放裁剪的变换, 复用避免每次绘制生成新的bitmap
+     */
+    private final Matrix mBitmapMatrix = new Matrix();
+    private final float[] mCropValues = new float[3];
+
+    /**
+     * qq群组重叠效果的旋转变换
+     */
+    private final Matrix mRotateMatrix = new Matrix();
+
+    private final RectF mOvalRect = new RectF();
+
     public ConcreteDrawingStrategy() {
         // 创建内容画笔和描边画笔 并设置属性
         mPaint = new Paint();
@@ -79,9 +94,8 @@ public class ConcreteDrawingStrategy implements IDrawingStrategy {
     public void algorithm(Canvas canvas, int childTotal, int curChild, ResInfo res, DisplayInfo info) {
         int display = info.displayType;            // 显示的类型
 
-        ILayoutManager.LayoutInfoGroup layoutInfoGroup = info.coordinates.get(curChild - 1);
-        float maxHeight = layoutInfoGroup.innerHeight;
-        float maxWidth = layoutInfoGroup.innerWidth;
+        float maxHeight = info.childHeight(curChild - 1);
+        float maxWidth = info.childWidth(curChild - 1);
 
         // 对描边进行边界的最大长度进行判断 不得超过半径的1/6
         float borderLimit = maxWidth > maxHeight ? maxHeight : maxWidth;
@@ -93,49 +107,34 @@ public class ConcreteDrawingStrategy implements IDrawingStrategy {
         mBorderPaint.setColor(info.borderColor);
         mBorderPaint.setStrokeWidth(mBorderWidth);
 
-        Bitmap newBitmap = null;
         Bitmap opeBitmap = res.getBitmap();
         mIsDrawText = (res.isForceText() || opeBitmap == null);
+        Matrix bitmapMatrix = mBitmapMatrix;
         if (mIsDrawText) {
             mPaint.setColor(res.getBgColor());
             mTextPaint.setColor(res.getTextColor());
             mIsPicRotate = false;
+        } else if (opeBitmap.getWidth() == (int) maxWidth && opeBitmap.getHeight() == (int) maxHeight) {
+            // 加载时已经是子元素的大小, 原样绘制
+            bitmapMatrix = null;
         } else {
-            int mBitmapWidth = opeBitmap.getWidth();   // 需要处理的bitmap宽度和高度
-            int mBitmapHeight = opeBitmap.getHeight();
-            // 布局调整
-            int dx = 0;
-            int dy = 0;
-            float scale;
-            if (mBitmapWidth > mBitmapHeight) {
-                scale = maxHeight / (float) mBitmapHeight;
-                dx = ((mBitmapWidth - mBitmapHeight) / 2);
-            } else if (mBitmapHeight > mBitmapWidth) {
-                scale = maxWidth / (float) mBitmapWidth;
-                dy = ((mBitmapHeight - mBitmapWidth) / 2);
-            } else {
-                scale = maxHeight / (float) mBitmapHeight;
-            }
-
-            Matrix matrix = new Matrix();
-            matrix.postScale(scale, scale);
-
-            // 缩放,  通过偏移的dx, dy先对bitmap进行多余部分的过滤摘除, 可以尽可能生成小的bitmap.
-            newBitmap = Bitmap.createBitmap(opeBitmap, dx < 0 ? -dx : dx, dy < 0 ? -dy : dy,
-                                            (opeBitmap.getWidth() + (dx < 0 ? dx : -dx)),
-                                            (opeBitmap.getHeight() + (dy < 0 ? dy : -dy)), matrix, true);
+            // 布局调整, 缩放,  通过偏移的dx, dy跳过多余部分, 直接以变换绘制, 不再生成中间bitmap
+            ScaleMan.cropSquare(opeBitmap.getWidth(), opeBitmap.getHeight(), maxWidth, maxHeight, mCropValues);
+            mBitmapMatrix.setTranslate(-mCropValues[ScaleMan.DX], -mCropValues[ScaleMan.DY]);
+            mBitmapMatrix.postScale(mCropValues[ScaleMan.SCALE], mCropValues[ScaleMan.SCALE]);
         }
 
         // 正式开始绘制
         canvas.save();
-        adjustMaskBitmapDisplay(canvas, res, newBitmap, (int) maxWidth, (int) maxHeight,
-                                childTotal > 5 ? 360 : ROTATIONS[childTotal - 1][curChild - 1], mSpacing, mIsPicRotate,
-                                display);
+        adjustMaskBitmapDisplay(canvas, res, mIsDrawText ? null : opeBitmap, bitmapMatrix, (int) maxWidth,
+                                (int) maxHeight, childTotal > 5 ? 360 : ROTATIONS[childTotal - 1][curChild - 1],
+                                mSpacing, mIsPicRotate, display);
         canvas.restore();
     }
 
-    private void adjustMaskBitmapDisplay(Canvas canvas, ResInfo res, Bitmap bitmap, int viewBoxW, int viewBoxH,
-                                         float rotation, float gapSize, boolean isRotate, int displayType) {
+    private void adjustMaskBitmapDisplay(Canvas canvas, ResInfo res, Bitmap bitmap, Matrix bitmapMatrix, int viewBoxW,
+                                         int viewBoxH, float rotation, float gapSize, boolean isRotate,
+                                         int displayType) {
         // 取最小值的中间值
         int center;
         if (viewBoxH >= viewBoxW) {
@@ -147,33 +146,33 @@ public class ConcreteDrawingStrategy implements IDrawingStrategy {
         if (AvatarView.TYPE_CIRCLE == displayType) {
             // qq群组效果
             // 先处理成圆形头像。如果没有旋转规则, 那么对半径进行0.95的缩小, 防止描边丢失
-            GraphsMan.drawCircle(canvas, bitmap, center, center, center * 0.98f, mPaint, isRotate ? 0 : mBorderWidth,
-                                 mBorderPaint);
+            GraphsMan.drawCircle(canvas, bitmap, bitmapMatrix, center, center, center * 0.98f, mPaint,
+                                 isRotate ? 0 : mBorderWidth, mBorderPaint);
 
             if (isRotate && rotation != 360f) {
-                Matrix matrix = new Matrix();
                 // 根据原图的中心位置旋转
-                matrix.setRotate(rotation, viewBoxW / 2, viewBoxH / 2);
-                canvas.setMatrix(matrix);
-                mPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+                mRotateMatrix.setRotate(rotation, viewBoxW / 2, viewBoxH / 2);
+                canvas.setMatrix(mRotateMatrix);
+                mPaint.setXfermode(XFERMODE_CLEAR);
                 canvas.drawCircle(viewBoxW * (1.5f - gapSize), center, center, mPaint);
                 mPaint.setXfermode(null);
             }
         } else if (AvatarView.TYPE_RECT == displayType) {
             // 原图头像
-            GraphsMan.drawRect(canvas, bitmap, viewBoxW, viewBoxH, 0, 0, mPaint, mBorderWidth, mBorderPaint);
+            GraphsMan.drawRect(canvas, bitmap, bitmapMatrix, viewBoxW, viewBoxH, 0, 0, mPaint, mBorderWidth,
+                               mBorderPaint);
         } else if (AvatarView.TYPE_OVAL == displayType) {
             // 椭圆头像
-            GraphsMan.drawOval(canvas, bitmap,
-                               new RectF(viewBoxW * 0.05f, viewBoxH * 0.2f, viewBoxW * 0.95f, viewBoxH * 0.8f), 0, 0,
-                               mPaint, mBorderWidth, mBorderPaint);
+            mOvalRect.set(viewBoxW * 0.05f, viewBoxH * 0.2f, viewBoxW * 0.95f, viewBoxH * 0.8f);
+            GraphsMan.drawOval(canvas, bitmap, bitmapMatrix, mOvalRect, 0, 0, mPaint, mBorderWidth, mBorderPaint);
         } else if (AvatarView.TYPE_STAR_FRAME == displayType) {
             // 五角星头像
-            GraphsMan.drawStarFrame(canvas, bitmap, (int) (center * 0.9f), 0, 0, mPaint, mBorderWidth, mBorderPaint);
+            GraphsMan.drawStarFrame(canvas, bitmap, bitmapMatrix, (int) (center * 0.9f), 0, 0, mPaint, mBorderWidth,
+                                    mBorderPaint);
         } else if (AvatarView.TYPE_ROUND_RECT == displayType) {
             // 有圆角的头像
-            GraphsMan.drawCornerRectBorder(canvas, bitmap, viewBoxW, viewBoxH, viewBoxW / 8, viewBoxW / 8, 0, 0, mPaint,
-                                           mBorderWidth, mBorderPaint);
+            GraphsMan.drawCornerRectBorder(canvas, bitmap, bitmapMatrix, viewBoxW, viewBoxH, viewBoxW / 8,
+                                           viewBoxW / 8, 0, 0, mPaint, mBorderWidth, mBorderPaint);
         }
 
         if (mIsDrawText) {
@@ -194,7 +193,7 @@ public class ConcreteDrawingStrategy implements IDrawingStrategy {
             spacingQuality = 0;
         }
 
-        mSpacing *= spacingQuality;
+        mSpacing = 0.15f * spacingQuality;
     }
 
     public boolean isPicRotate() {
@@ -211,8 +210,15 @@ public class ConcreteDrawingStrategy implements IDrawingStrategy {
         this.mIsPicRotate = mIsPicRotate;
     }
 
+    /**
+     * 获取两张图片间隔距离的实际系数
+     */
+    public float getSpacing() {
+        return mSpacing;
+    }
+
     public float getSpacingQuality() {
-        return Math.round((mSpacing / 0.15f) * 100) / 100;
+        return Math.round((mSpacing / 0.15f) * 100) / 100f;
     }
 
 }
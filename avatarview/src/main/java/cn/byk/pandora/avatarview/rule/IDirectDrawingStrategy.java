@@ -0,0 +1,13 @@
+package cn.byk.pandora.avatarview.rule;
+
+import android.graphics.Canvas;
+
+import cn.byk.pandora.avatarview.AvatarView;
+
+/**
+ * 直接绘制到控件画布上的显示策略
+ * <p>
+ * 实现此接口后, {@link AvatarView#onDraw(Canvas)}不再为每个子元素准备离屏bitmap,
+ * 传入的画布已经平移到子元素的左上角, 并裁剪为子元素的区域, 策略内部不应使用依赖离屏图层的混合模式
+ */
+public interface IDirectDrawingStrategy extends IDrawingStrategy {}
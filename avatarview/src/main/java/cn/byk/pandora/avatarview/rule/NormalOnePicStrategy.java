@@ -29,6 +29,16 @@ public class NormalOnePicStrategy implements IDrawingStrategy {
     private final Paint mBorderPaint;
     private final Paint mTextPaint;
 
+    /**
+     * 着色器和对应的bitmap, 同一张图重绘时复用
+     */
+    private BitmapShader mBitmapShader;
+    private Bitmap mShaderBitmap;
+
+    private final Matrix mShaderMatrix = new Matrix();
+
+    private final RectF mOvalRect = new RectF();
+
     /**
      * 圆角矩形的圆角半径系数
      */
@@ -131,6 +141,7 @@ public class NormalOnePicStrategy implements IDrawingStrategy {
         Bitmap opeBitmap = res.getBitmap();
         boolean drawText = (res.isForceText() || opeBitmap == null);
         if (drawText) {
+            mPaint.setShader(null);
             mPaint.setColor(res.getBgColor());
             mTextPaint.setColor(res.getTextColor());
         } else {
@@ -158,8 +169,11 @@ public class NormalOnePicStrategy implements IDrawingStrategy {
                 }
             }
 
-            // 创建着色器 shader
-            BitmapShader mBitmapShader = new BitmapShader(opeBitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+            // 创建着色器 shader, 图片没变时复用
+            if (mBitmapShader == null || mShaderBitmap != opeBitmap) {
+                mBitmapShader = new BitmapShader(opeBitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+                mShaderBitmap = opeBitmap;
+            }
             mPaint.setShader(mBitmapShader);
 
             // 获取的位置调整的信息 和bitmap需要缩放的比值
@@ -176,8 +190,6 @@ public class NormalOnePicStrategy implements IDrawingStrategy {
             }
 
             // 进行调整
-            Matrix mShaderMatrix = new Matrix();
-            mShaderMatrix.set(null);
             mShaderMatrix.setScale(scale, scale);
             mShaderMatrix.postTranslate((int) (dx + 0.5f) + borderWidth + layoutOffsetX,
                                         (int) (dy + 0.5f) + borderWidth + layoutOffsetY);
@@ -200,14 +212,14 @@ public class NormalOnePicStrategy implements IDrawingStrategy {
         } else if (AvatarView.TYPE_OVAL == display) {
             // 椭圆头像
             minRadio = layoutSquareSide * mOvalHeightRatio;
-            GraphsMan.drawOval(canvas, null, new RectF(layoutSquareSide * (1 - mOvalWidthRatio),
-                                                       layoutSquareSide * (1 - mOvalHeightRatio),
-                                                       layoutSquareSide * mOvalWidthRatio, minRadio), layoutOffsetX,
-                               layoutOffsetY, mPaint, borderWidth, mBorderPaint);
+            mOvalRect.set(layoutSquareSide * (1 - mOvalWidthRatio), layoutSquareSide * (1 - mOvalHeightRatio),
+                          layoutSquareSide * mOvalWidthRatio, minRadio);
+            GraphsMan.drawOval(canvas, null, mOvalRect, layoutOffsetX, layoutOffsetY, mPaint, borderWidth,
+                               mBorderPaint);
         } else if (!drawText && AvatarView.TYPE_STAR_FRAME == display) {
-            // 五角星头像
-            GraphsMan.drawStarFrame(canvas, opeBitmap, (int) (layoutSquareSide / 2f), layoutOffsetX, layoutOffsetY,
-                                    null, borderWidth, mBorderPaint);
+            // 五角星头像, 通过着色器填充, 不需要额外的图层和缩放bitmap
+            GraphsMan.drawStarFrame(canvas, null, (int) (layoutSquareSide / 2f), layoutOffsetX, layoutOffsetY,
+                                    mPaint, borderWidth, mBorderPaint);
         } else if (AvatarView.TYPE_ROUND_RECT == display) {
             // 有圆角的头像
             GraphsMan.drawCornerRectBorder(canvas, null, layoutSquareSide, layoutSquareSide,
@@ -0,0 +1,240 @@
+package cn.byk.pandora.avatarview.rule;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.Region;
+import android.graphics.Shader;
+import android.os.Build;
+import android.text.TextPaint;
+
+import cn.byk.pandora.avatarlayout.ScaleMan;
+import cn.byk.pandora.avatarview.AvatarView;
+import cn.byk.pandora.avatarview.bean.DisplayInfo;
+import cn.byk.pandora.avatarview.bean.ResInfo;
+import cn.byk.pandora.avatarview.util.GraphsMan;
+import cn.byk.pandora.avatarview.util.ShapeTemplates;
+
+/**
+ * 着色器直接绘制策略
+ * <p>
+ * 与{@link ConcreteDrawingStrategy}显示效果一致, 但每个子元素通过{@link BitmapShader}的变换矩阵和裁剪路径直接绘制到控件画布上,
+ * 不需要离屏bitmap和混合模式, 合成工作可以交给硬件加速的渲染线程完成
+ */
+public class ShaderDrawingStrategy implements IDirectDrawingStrategy {
+
+    /**
+     * 默认两张图片间隔距离系数
+     */
+    private float mSpacing = 0.15f;
+
+    /**
+     * 控制是开启qq群组图片两张图片重叠的效果
+     */
+    private boolean mIsPicRotate = true;
+
+    private final Paint mPaint;
+    private final Paint mBorderPaint;
+    private final Paint mTextPaint;
+
+    /**
+     * 每个位置的着色器和对应的bitmap, 图片没变时复用
+     */
+    private BitmapShader[] mShaders = new BitmapShader[0];
+    private Bitmap[] mShaderBitmaps = new Bitmap[0];
+
+    private final Matrix mShaderMatrix = new Matrix();
+    private final float[] mCropValues = new float[3];
+    private final Matrix mRotateMatrix = new Matrix();
+    private final float[] mBiteCenter = new float[2];
+
+    private final Path mShapePath = new Path();
+    private final Path mBitePath = new Path();
+    private final RectF mOvalRect = new RectF();
+
+    public ShaderDrawingStrategy() {
+        // 创建内容画笔和描边画笔 并设置属性
+        mPaint = new Paint();
+        mPaint.setAntiAlias(true);
+        mPaint.setFilterBitmap(true);
+
+        mBorderPaint = new Paint();
+        mBorderPaint.setStyle(Paint.Style.STROKE);
+        mBorderPaint.setStrokeWidth(1);
+        mBorderPaint.setColor(Color.BLACK);
+        mBorderPaint.setAntiAlias(true);
+
+        mTextPaint = new TextPaint();
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setAntiAlias(true);
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+    }
+
+    @Override
+    public void algorithm(Canvas canvas, int childTotal, int curChild, ResInfo res, DisplayInfo info) {
+        int viewBoxW = info.childWidth(curChild - 1);
+        int viewBoxH = info.childHeight(curChild - 1);
+
+        float borderWidth = info.borderWidth;
+        mBorderPaint.setColor(info.borderColor);
+        mBorderPaint.setStrokeWidth(borderWidth);
+
+        Bitmap opeBitmap = res.getBitmap();
+        boolean drawText = (res.isForceText() || opeBitmap == null);
+        if (drawText) {
+            mPaint.setShader(null);
+            mPaint.setColor(res.getBgColor());
+            mTextPaint.setColor(res.getTextColor());
+        } else {
+            mPaint.setShader(obtainShader(curChild - 1, opeBitmap));
+            adjustShaderMatrix(opeBitmap, viewBoxW, viewBoxH);
+        }
+
+        // 取最小值的中间值
+        int center;
+        if (viewBoxH >= viewBoxW) {
+            center = Math.round(viewBoxW / 2f);
+        } else {
+            center = Math.round(viewBoxH / 2f);
+        }
+
+        int display = info.displayType;
+        if (AvatarView.TYPE_CIRCLE == display) {
+            // qq群组效果, 文字头像不做重叠处理
+            float rotation = childTotal > 5 ? 360 : ConcreteDrawingStrategy.ROTATIONS[childTotal - 1][curChild - 1];
+            // 描边的条件与ConcreteDrawingStrategy一致: 开启旋转时图片头像都不描边, 包括不需要重叠的位置
+            boolean isRotate = mIsPicRotate && !drawText;
+            boolean isBite = isRotate && rotation != 360f;
+            drawCircle(canvas, viewBoxW, viewBoxH, center, rotation, isBite, isRotate ? 0 : borderWidth);
+        } else if (AvatarView.TYPE_RECT == display) {
+            // 原图头像
+            GraphsMan.drawRect(canvas, null, viewBoxW, viewBoxH, 0, 0, mPaint, borderWidth, mBorderPaint);
+        } else if (AvatarView.TYPE_OVAL == display) {
+            // 椭圆头像
+            mOvalRect.set(viewBoxW * 0.05f, viewBoxH * 0.2f, viewBoxW * 0.95f, viewBoxH * 0.8f);
+            GraphsMan.drawOval(canvas, null, mOvalRect, 0, 0, mPaint, borderWidth, mBorderPaint);
+        } else if (AvatarView.TYPE_STAR_FRAME == display) {
+            // 五角星头像
+            GraphsMan.drawStarFrame(canvas, null, (int) (center * 0.9f), 0, 0, mPaint, borderWidth, mBorderPaint);
+        } else if (AvatarView.TYPE_ROUND_RECT == display) {
+            // 有圆角的头像
+            GraphsMan.drawCornerRectBorder(canvas, null, viewBoxW, viewBoxH, viewBoxW / 8, viewBoxW / 8, 0, 0, mPaint,
+                                           borderWidth, mBorderPaint);
+        }
+
+        if (drawText) {
+            mTextPaint.setTextSize(viewBoxH * 0.4f);
+            GraphsMan.drawText(canvas, res.getBriefText(), center, center, mTextPaint);
+        }
+    }
+
+    /**
+     * 画圆形头像, qq群组时从圆中减去与相邻头像重叠的部分
+     */
+    private void drawCircle(Canvas canvas, int viewBoxW, int viewBoxH, int center, float rotation, boolean isBite,
+                            float borderWidth) {
+        float radius = center * 0.98f;
+        if (!isBite) {
+            GraphsMan.drawCircle(canvas, null, center, center, radius, mPaint, borderWidth, mBorderPaint);
+            return;
+        }
+
+        // 重叠区域的圆心, 即未旋转时的位置绕子元素中心旋转后的坐标
+        mBiteCenter[0] = viewBoxW * (1.5f - mSpacing);
+        mBiteCenter[1] = center;
+        mRotateMatrix.setRotate(rotation, viewBoxW / 2, viewBoxH / 2);
+        mRotateMatrix.mapPoints(mBiteCenter);
+
+        ShapeTemplates.transform(ShapeTemplates.CIRCLE, mBiteCenter[0] - center, mBiteCenter[1] - center, center * 2,
+                                 center * 2, mBitePath);
+        ShapeTemplates.transform(ShapeTemplates.CIRCLE, center - radius, center - radius, radius * 2, radius * 2,
+                                 mShapePath);
+
+        if (Build.VERSION.SDK_INT >= 19) {
+            mShapePath.op(mBitePath, Path.Op.DIFFERENCE);
+            canvas.drawPath(mShapePath, mPaint);
+        } else {
+            int saveCount = canvas.save();
+            canvas.clipPath(mBitePath, Region.Op.DIFFERENCE);
+            canvas.drawPath(mShapePath, mPaint);
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    /**
+     * 与{@link ConcreteDrawingStrategy}相同的居中裁剪缩放, 以着色器的变换矩阵实现
+     */
+    private void adjustShaderMatrix(Bitmap bitmap, float maxWidth, float maxHeight) {
+        if (bitmap.getWidth() == (int) maxWidth && bitmap.getHeight() == (int) maxHeight) {
+            // 加载时已经是子元素的大小, 不需要变换
+            mShaderMatrix.reset();
+            mPaint.getShader()
+                  .setLocalMatrix(mShaderMatrix);
+            return;
+        }
+
+        ScaleMan.cropSquare(bitmap.getWidth(), bitmap.getHeight(), maxWidth, maxHeight, mCropValues);
+        mShaderMatrix.setTranslate(-mCropValues[ScaleMan.DX], -mCropValues[ScaleMan.DY]);
+        mShaderMatrix.postScale(mCropValues[ScaleMan.SCALE], mCropValues[ScaleMan.SCALE]);
+        mPaint.getShader()
+              .setLocalMatrix(mShaderMatrix);
+    }
+
+    private BitmapShader obtainShader(int index, Bitmap bitmap) {
+        if (index >= mShaders.length) {
+            BitmapShader[] shaders = new BitmapShader[index + 1];
+            Bitmap[] bitmaps = new Bitmap[index + 1];
+            System.arraycopy(mShaders, 0, shaders, 0, mShaders.length);
+            System.arraycopy(mShaderBitmaps, 0, bitmaps, 0, mShaderBitmaps.length);
+            mShaders = shaders;
+            mShaderBitmaps = bitmaps;
+        }
+
+        if (mShaders[index] == null || mShaderBitmaps[index] != bitmap) {
+            mShaders[index] = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+            mShaderBitmaps[index] = bitmap;
+        }
+        return mShaders[index];
+    }
+
+    /**
+     * 设置两张图片的间距
+     *
+     * @param spacingQuality 接收处理范围 0~2 ; 2的时候空隙为最大, 0的时候会重叠. 默认为1
+     */
+    public void setSpacing(float spacingQuality) {
+        if (spacingQuality > 2) {
+            spacingQuality = 2;
+        } else if (spacingQuality < 0) {
+            spacingQuality = 0;
+        }
+
+        mSpacing = 0.15f * spacingQuality;
+    }
+
+    /**
+     * 获取两张图片间隔距离的实际系数
+     */
+    public float getSpacing() {
+        return mSpacing;
+    }
+
+    public boolean isPicRotate() {
+        return mIsPicRotate;
+    }
+
+    /**
+     * 设置qq群组图片去除重叠方法
+     *
+     * @param isPicRotate 为true时, 为QQ群组的样式, 默认属性
+     *                    为false时: 可去除两个图片重叠确实的效果
+     */
+    public void setIsPicRotate(boolean isPicRotate) {
+        this.mIsPicRotate = isPicRotate;
+    }
+}
@@ -0,0 +1,65 @@
+package cn.byk.pandora.avatarview.source;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+/**
+ * 头像图片的加载来源, AvatarView只通过这个接口按地址加载图片, 可以接入应用已有的图片框架
+ * <p>
+ * 内置{@link LocalImageSource}加载本地文件, content和资源地址; 依赖中有Glide时其余地址交给{@link GlideImageSource}
+ */
+public interface AvatarImageSource {
+
+    /**
+     * 是否能加载这个地址
+     */
+    boolean canLoad(String url);
+
+    /**
+     * 开始加载, 在主线程调用
+     *
+     * @param width        目标宽度, 图片按这个大小解码
+     * @param height       目标高度
+     * @param exactSize    为true时居中裁剪为目标的宽高, 得到的图片与子元素大小一致
+     * @param preferRgb565 为true时没有透明通道的图片解码为RGB_565
+     * @param callback     结果回调, 可以在任意线程回调, 每次加载最多回调一次
+     * @return 用于取消加载的句柄
+     */
+    Job load(Context context, String url, int width, int height, boolean exactSize, boolean preferRgb565,
+             Callback callback);
+
+    interface Callback {
+
+        void onReady(Bitmap bitmap);
+
+        void onFailed();
+
+        /**
+         * 来源自己放弃了这次加载, 之后不会再有结果
+         */
+        void onCleared();
+
+        /**
+         * 来源收回了{@link #onReady(Bitmap)}交付的图片, 之后不能再绘制它
+         */
+        void onReleased(Bitmap bitmap);
+    }
+
+    /**
+     * 一次正在进行的加载
+     */
+    interface Job {
+
+        /**
+         * 取消加载, 之后不再回调. 在主线程调用
+         * <p>
+         * 已经得到结果时表示结果不再使用, 来源可以收回并复用图片, 所以只能在不再绘制这张图片之后调用
+         */
+        void cancel();
+
+        /**
+         * 已经得到结果或者已经取消
+         */
+        boolean isDone();
+    }
+}
@@ -0,0 +1,137 @@
+package cn.byk.pandora.avatarview.source;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.request.target.CustomTarget;
+import com.bumptech.glide.request.transition.Transition;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * 通过Glide加载的来源. Glide只是compileOnly依赖, 使用前需要通过{@link #isAvailable()}确认应用中存在
+ */
+public class GlideImageSource implements AvatarImageSource {
+
+    private static final String GLIDE_CLASS = "com.bumptech.glide.Glide";
+
+    private static volatile Boolean sAvailable;
+
+    /**
+     * 应用的依赖中是否有Glide
+     */
+    public static boolean isAvailable() {
+        if (sAvailable == null) {
+            boolean available;
+            try {
+                Class.forName(GLIDE_CLASS);
+                available = true;
+            } catch (ClassNotFoundException | LinkageError e) {
+                available = false;
+            }
+            sAvailable = available;
+        }
+        return sAvailable;
+    }
+
+    @Override
+    public boolean canLoad(String url) {
+        return true;
+    }
+
+    @Override
+    public Job load(Context context, String url, int width, int height, boolean exactSize, boolean preferRgb565,
+                    Callback callback) {
+        RequestBuilder<Bitmap> request = Glide.with(context)
+                                              .asBitmap()
+                                              .load(url);
+
+        if (exactSize) {
+            request = request.centerCrop();
+        }
+
+        if (preferRgb565) {
+            request = request.format(DecodeFormat.PREFER_RGB_565);
+        }
+
+        return request.into(new GlideJob(context, width, height, callback));
+    }
+
+    public static void clearMemory(Context context) {
+        Glide.get(context)
+             .clearMemory();
+    }
+
+    private static class GlideJob extends CustomTarget<Bitmap> implements Job {
+
+        private final Context mContext;
+        private final Callback mCallback;
+
+        private volatile boolean mDone;
+
+        /**
+         * 已经交付的图片, Glide清理这个目标时收回
+         */
+        private volatile Bitmap mResource;
+
+        /**
+         * 交付的图片由{@link #cancel()}主动交还, 收回时不需要再通知
+         */
+        private volatile boolean mReleased;
+
+        GlideJob(Context context, int width, int height, Callback callback) {
+            super(width, height);
+            mContext = context.getApplicationContext();
+            mCallback = callback;
+        }
+
+        @Override
+        public void onResourceReady(@NonNull Bitmap resource, @Nullable Transition<? super Bitmap> transition) {
+            mResource = resource;
+            mDone = true;
+            mCallback.onReady(resource);
+        }
+
+        @Override
+        public void onLoadFailed(@Nullable Drawable errorDrawable) {
+            super.onLoadFailed(errorDrawable);
+            mDone = true;
+            mCallback.onFailed();
+        }
+
+        @Override
+        public void onLoadCleared(@Nullable Drawable placeholder) {
+            Bitmap resource = mResource;
+            mResource = null;
+            if (resource != null) {
+                // 交付的图片将被Glide复用, 使用方必须停止绘制
+                if (!mReleased) {
+                    mCallback.onReleased(resource);
+                }
+            } else if (!mDone) {
+                mDone = true;
+                mCallback.onCleared();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (mResource != null) {
+                mReleased = true;
+            }
+            mDone = true;
+            Glide.with(mContext)
+                 .clear(this);
+        }
+
+        @Override
+        public boolean isDone() {
+            return mDone;
+        }
+    }
+}
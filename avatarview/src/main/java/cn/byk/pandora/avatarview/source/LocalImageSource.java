@@ -0,0 +1,128 @@
+package cn.byk.pandora.avatarview.source;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Future;
+
+import androidx.annotation.DrawableRes;
+import cn.byk.pandora.avatarview.cache.BitmapPool;
+import cn.byk.pandora.avatarview.util.BitmapMan;
+import cn.byk.pandora.avatarview.util.RenderExecutor;
+
+/**
+ * 内置的本地图片来源, 支持文件路径, file://, content://和android.resource://地址
+ * <p>
+ * 在解码线程池中直接按目标大小解码, 见{@link BitmapMan#decode(BitmapMan.Source, int, int, boolean, boolean)}
+ */
+public class LocalImageSource implements AvatarImageSource {
+
+    private static final String FILE_PREFIX = ContentResolver.SCHEME_FILE + ":";
+    private static final String CONTENT_PREFIX = ContentResolver.SCHEME_CONTENT + ":";
+    private static final String RESOURCE_PREFIX = ContentResolver.SCHEME_ANDROID_RESOURCE + ":";
+
+    /**
+     * 资源id对应的地址, 可以和网络地址一起传给{@link cn.byk.pandora.avatarview.AvatarView#setImageUrls(String...)}
+     */
+    public static String resourceUrl(Context context, @DrawableRes int resId) {
+        return RESOURCE_PREFIX + "//" + context.getPackageName() + "/" + resId;
+    }
+
+    @Override
+    public boolean canLoad(String url) {
+        return url != null && (url.startsWith("/") || url.startsWith(FILE_PREFIX) || url.startsWith(CONTENT_PREFIX)
+                || url.startsWith(RESOURCE_PREFIX));
+    }
+
+    @Override
+    public Job load(Context context, String url, int width, int height, boolean exactSize, boolean preferRgb565,
+                    Callback callback) {
+        LocalJob job = new LocalJob(context, url, width, height, exactSize, preferRgb565, callback);
+        job.mFuture = RenderExecutor.submitDecode(job);
+        return job;
+    }
+
+    private static class LocalJob implements Job, Runnable, BitmapMan.Source {
+
+        private final Context mContext;
+        private final String mUrl;
+        private final int mWidth;
+        private final int mHeight;
+        private final boolean mExactSize;
+        private final boolean mPreferRgb565;
+        private final Callback mCallback;
+
+        private volatile Future<?> mFuture;
+        private volatile boolean mCancelled;
+        private volatile boolean mDone;
+
+        LocalJob(Context context, String url, int width, int height, boolean exactSize, boolean preferRgb565,
+                 Callback callback) {
+            mContext = context.getApplicationContext();
+            mUrl = url;
+            mWidth = width;
+            mHeight = height;
+            mExactSize = exactSize;
+            mPreferRgb565 = preferRgb565;
+            mCallback = callback;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            if (mUrl.startsWith("/")) {
+                return new FileInputStream(mUrl);
+            }
+            InputStream stream = mContext.getContentResolver()
+                                         .openInputStream(Uri.parse(mUrl));
+            if (stream == null) {
+                throw new IOException("Unable to open " + mUrl);
+            }
+            return stream;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+
+            Bitmap bitmap;
+            try {
+                bitmap = BitmapMan.decode(this, mWidth, mHeight, mExactSize, mPreferRgb565);
+            } catch (RuntimeException | OutOfMemoryError e) {
+                bitmap = null;
+            }
+            mDone = true;
+
+            if (mCancelled) {
+                // 解码结果只属于这次加载, 没有人使用时直接归还
+                BitmapPool.getInstance()
+                          .release(bitmap);
+                return;
+            }
+
+            if (bitmap != null) {
+                mCallback.onReady(bitmap);
+            } else {
+                mCallback.onFailed();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+            mDone = true;
+            RenderExecutor.cancel(mFuture);
+        }
+
+        @Override
+        public boolean isDone() {
+            return mDone;
+        }
+    }
+}
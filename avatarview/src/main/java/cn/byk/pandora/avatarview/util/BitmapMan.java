@@ -3,12 +3,23 @@ package cn.byk.pandora.avatarview.util;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.util.Log;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import cn.byk.pandora.avatarlayout.ScaleMan;
+import cn.byk.pandora.avatarview.cache.BitmapPool;
+
 /**
  * Created by Byk on 2017/1/9.
  * <p>
@@ -20,6 +31,8 @@ public class BitmapMan {
 
     private static final Bitmap.Config BITMAP_CONFIG = Bitmap.Config.ARGB_8888;
 
+    private static final Paint sScalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
     public static Bitmap toBitmap(Drawable drawable) {
         if (drawable == null) {
             return null;
@@ -60,48 +73,240 @@ public class BitmapMan {
      * @return 返回采样之后的bitmap对象
      */
     public static Bitmap decodeFixedSizeForResources(Resources res, int resId, int reqWidth, int reqHeight) {
+        return decodeResource(res, resId, reqWidth, reqHeight, false);
+    }
+
+    /**
+     * 解码资源图片, 见{@link #decode(Source, int, int, boolean)}
+     */
+    public static Bitmap decodeResource(final Resources res, final int resId, int reqWidth, int reqHeight,
+                                        boolean centerCrop) {
+        return decode(new Source() {
+            @Override
+            public InputStream open() throws IOException {
+                return res.openRawResource(resId);
+            }
+        }, reqWidth, reqHeight, centerCrop);
+    }
+
+    /**
+     * 解码本地文件, 见{@link #decode(Source, int, int, boolean)}
+     */
+    public static Bitmap decodeFile(final String path, int reqWidth, int reqHeight, boolean centerCrop) {
+        return decode(new Source() {
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(path);
+            }
+        }, reqWidth, reqHeight, centerCrop);
+    }
+
+    /**
+     * 按目标大小解码图片, 峰值内存接近目标大小的bitmap
+     * <p>
+     * 先只读取原图大小, 算出2的幂次的采样率, 剩下的缩放通过 inDensity / inTargetDensity 在解码时一次完成;
+     * jpeg没有透明通道, 使用RGB_565; 优先复用{@link BitmapPool}中同尺寸的bitmap.
+     * 居中裁剪时使用{@link BitmapRegionDecoder}只解码可见区域, 格式不支持时退回整图解码
+     *
+     * @param source     图片数据, 会被打开多次
+     * @param reqWidth   目标宽度
+     * @param reqHeight  目标高度
+     * @param centerCrop 是否只保留居中的与目标同比例的区域
+     * @return 可修改的bitmap, 不再使用时可以归还给{@link BitmapPool}; 解码失败时返回null
+     */
+    public static Bitmap decode(Source source, int reqWidth, int reqHeight, boolean centerCrop) {
+        return decode(source, reqWidth, reqHeight, centerCrop, true);
+    }
+
+    /**
+     * @param preferRgb565 没有透明通道的图片是否解码为RGB_565, 为false时始终使用ARGB_8888
+     * @see #decode(Source, int, int, boolean)
+     */
+    public static Bitmap decode(Source source, int reqWidth, int reqHeight, boolean centerCrop,
+                                boolean preferRgb565) {
         // 首先先指定加载的模式 为只是获取资源文件的大小
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
-        BitmapFactory.decodeResource(res, resId, options);
+        decodeStream(source, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = preferRgb565 && isOpaque(options) ? Bitmap.Config.RGB_565 : BITMAP_CONFIG;
+        options.inMutable = true;
+
+        if (centerCrop && Build.VERSION.SDK_INT >= 10) {
+            Bitmap bitmap = decodeRegion(source, options, reqWidth, reqHeight);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
 
         //Calculate Size  计算要设置的采样率 并把值设置到option上
+        int width = options.outWidth;
+        int height = options.outHeight;
         options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
 
-        // 关闭只加载属性模式, 并重新加载的时候传入自定义的options对象
-        options.inJustDecodeBounds = false;
+        // 采样后剩余的比例交给解码器在解码时缩放
+        int sampledWidth = Math.max(1, width / options.inSampleSize);
+        int sampledHeight = Math.max(1, height / options.inSampleSize);
+        int[] density = new int[2];
+        ScaleMan.densityScale(sampledWidth, sampledHeight, reqWidth, reqHeight, density);
+        if (density[0] > 0) {
+            options.inScaled = true;
+            options.inDensity = density[0];
+            options.inTargetDensity = density[1];
+            float scale = density[1] / (float) density[0];
+            sampledWidth = (int) (sampledWidth * scale + 0.5f);
+            sampledHeight = (int) (sampledHeight * scale + 0.5f);
+        } else {
+            options.inScaled = false;
+        }
 
-        return BitmapFactory.decodeResource(res, resId, options);
+        options.inBitmap = obtainReusable(sampledWidth, sampledHeight, options.inPreferredConfig);
+        try {
+            Bitmap bitmap = decodeStream(source, options);
+            if (bitmap == null) {
+                BitmapPool.getInstance()
+                          .release(options.inBitmap);
+            }
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            // 复用的bitmap与解码结果不匹配, 不复用重新解码
+            return retryWithoutReuse(source, options);
+        }
     }
 
     /**
-     * 一个计算工具类的方法, 传入图片的属性对象和 想要实现的目标大小. 通过计算得到采样值
-     * 如果目标大于原图片那么是不进行处理的.
+     * 只解码居中的可见区域, 再精确缩放到目标大小
      */
-    private static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
-        if (reqHeight == 0 || reqWidth == 0) {
-            return 1;
+    private static Bitmap decodeRegion(Source source, BitmapFactory.Options options, int reqWidth, int reqHeight) {
+        InputStream stream = null;
+        BitmapRegionDecoder decoder = null;
+        try {
+            stream = source.open();
+            decoder = BitmapRegionDecoder.newInstance(stream, false);
+
+            int[] region = new int[4];
+            ScaleMan.centerCropRegion(decoder.getWidth(), decoder.getHeight(), reqWidth, reqHeight, region);
+            Rect rect = new Rect(region[0], region[1], region[2], region[3]);
+
+            options.inSampleSize = ScaleMan.calculateInSampleSize(rect.width(), rect.height(), reqWidth, reqHeight);
+            options.inBitmap = obtainReusable(Math.max(1, rect.width() / options.inSampleSize),
+                                              Math.max(1, rect.height() / options.inSampleSize),
+                                              options.inPreferredConfig);
+
+            Bitmap bitmap;
+            try {
+                bitmap = decoder.decodeRegion(rect, options);
+            } catch (IllegalArgumentException e) {
+                BitmapPool.getInstance()
+                          .release(options.inBitmap);
+                options.inBitmap = null;
+                bitmap = decoder.decodeRegion(rect, options);
+            }
+            return scaleTo(bitmap, reqWidth, reqHeight);
+        } catch (IOException e) {
+            // 格式不支持区域解码
+            return null;
+        } catch (OutOfMemoryError e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (decoder != null) {
+                decoder.recycle();
+            }
+            closeQuietly(stream);
+            options.inBitmap = null;
+        }
+    }
+
+    /**
+     * 采样后仍然大于目标时缩放到目标大小, 中间结果归还复用
+     */
+    private static Bitmap scaleTo(Bitmap bitmap, int reqWidth, int reqHeight) {
+        if (bitmap == null || reqWidth <= 0 || reqHeight <= 0 || bitmap.getWidth() <= reqWidth
+                || bitmap.getHeight() <= reqHeight) {
+            return bitmap;
+        }
+
+        BitmapPool pool = BitmapPool.getInstance();
+        Bitmap target = pool.tryAcquire(reqWidth, reqHeight, bitmap.getConfig());
+        if (target == null) {
+            target = Bitmap.createBitmap(reqWidth, reqHeight, bitmap.getConfig());
+        }
+        Canvas canvas = new Canvas(target);
+        canvas.drawBitmap(bitmap, null, new Rect(0, 0, reqWidth, reqHeight), sScalePaint);
+        pool.release(bitmap);
+        return target;
+    }
+
+    private static Bitmap retryWithoutReuse(Source source, BitmapFactory.Options options) {
+        BitmapPool.getInstance()
+                  .release(options.inBitmap);
+        options.inBitmap = null;
+        return decodeStream(source, options);
+    }
+
+    /**
+     * 4.4之前复用要求尺寸完全一致并且不能采样, 只在4.4及以上复用
+     */
+    private static Bitmap obtainReusable(int width, int height, Bitmap.Config config) {
+        if (Build.VERSION.SDK_INT < 19) {
+            return null;
         }
+        return BitmapPool.getInstance()
+                         .tryAcquireForDecode(width, height, config);
+    }
 
-        //Raw height and width of image
-        //原始图片的宽高属性
-        final int height = options.outHeight;
-        final int width = options.outWidth;
-        int inSampleSize = 1;
+    /**
+     * 只有jpeg可以在不解码像素的情况下确定没有透明通道
+     */
+    private static boolean isOpaque(BitmapFactory.Options options) {
+        return "image/jpeg".equals(options.outMimeType);
+    }
 
-        // 如果想要实现的宽高比原始图片的宽高小那么就可以计算出采样率, 否则不需要改变采样率
-        if (reqWidth < height || reqHeight < width) {
-            int halfWidth = width / 2;
-            int halfHeight = height / 2;
+    private static Bitmap decodeStream(Source source, BitmapFactory.Options options) {
+        InputStream stream = null;
+        try {
+            stream = source.open();
+            return BitmapFactory.decodeStream(stream, null, options);
+        } catch (IOException e) {
+            Log.w(TAG, "打开图片失败: " + e.getMessage());
+            return null;
+        } catch (OutOfMemoryError e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeQuietly(stream);
+        }
+    }
 
-            // 判断原始长宽的一半是否比目标大小小, 如果小那么增大采样率2倍, 直到出现修改后原始值会比目标值大的时候
-            while ((halfHeight / inSampleSize) >= reqHeight && (halfWidth / inSampleSize) >= reqWidth) {
-                inSampleSize *= 2;
+    private static void closeQuietly(InputStream stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
             }
         }
+    }
+
+    /**
+     * 一个计算工具类的方法, 传入图片的属性对象和 想要实现的目标大小. 通过计算得到采样值
+     * 如果目标大于原图片那么是不进行处理的. 具体计算见{@link ScaleMan#calculateInSampleSize(int, int, int, int)}
+     */
+    private static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+        int inSampleSize = ScaleMan.calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
         Log.i(TAG, "进行图片的inSampleSize计算的值: " + inSampleSize);
 
         return inSampleSize;
     }
 
+    /**
+     * 图片数据的来源, 每次调用返回一个新的输入流, 由解码流程负责关闭
+     */
+    public interface Source {
+
+        InputStream open() throws IOException;
+    }
 }
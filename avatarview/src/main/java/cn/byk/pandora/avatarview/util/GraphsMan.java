@@ -11,6 +11,7 @@ import android.graphics.RectF;
 import android.os.Build;
 import android.util.Log;
 
+import cn.byk.pandora.avatarlayout.ScaleMan;
 import cn.byk.pandora.avatarview.AvatarView;
 
 /**
@@ -24,19 +25,50 @@ public class GraphsMan {
 
     private static final String TAG = GraphsMan.class.getName();
 
+    private static final PorterDuffXfermode XFERMODE_SRC_IN = new PorterDuffXfermode(PorterDuff.Mode.SRC_IN);
+
+    /**
+     * 未传入画笔时绘制bitmap使用的画笔, 只读
+     */
+    private static final Paint BITMAP_PAINT = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * 每个线程复用的临时对象, 绘制过程中不再创建新对象
+     */
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private static final class Scratch {
+        final RectF rectF = new RectF();
+        final Path path = new Path();
+        final Matrix matrix = new Matrix();
+        final Paint.FontMetrics fontMetrics = new Paint.FontMetrics();
+        final float[] scaleValues = new float[3];
+    }
+
     public static void drawRect(Canvas canvas, Bitmap bitmap, float sideWidth, float sideHeight, int offsetX,
                                 int offsetY, Paint paint, float borderWidth, Paint borderPaint) {
+        drawRect(canvas, bitmap, null, sideWidth, sideHeight, offsetX, offsetY, paint, borderWidth, borderPaint);
+    }
+
+    /**
+     * 合成一个矩形
+     *
+     * @param bitmapMatrix bitmap绘制时的变换, 为null时按偏移位置原样绘制
+     */
+    public static void drawRect(Canvas canvas, Bitmap bitmap, Matrix bitmapMatrix, float sideWidth, float sideHeight,
+                                int offsetX, int offsetY, Paint paint, float borderWidth, Paint borderPaint) {
         // 画矩形
-        RectF rectF = new RectF(offsetX, offsetY, sideWidth + offsetX, sideHeight + offsetY);
+        RectF rectF = SCRATCH.get().rectF;
+        rectF.set(offsetX, offsetY, sideWidth + offsetX, sideHeight + offsetY);
         canvas.drawRect(rectF, paint);
 
         // 表明只需要要画出想要的图形即可, 可能实现合成方式是Shader着色器,而不是setXfermode
-        if (null != bitmap) {
-            //设置混合的模式
-            paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
-            canvas.drawBitmap(bitmap, offsetX, offsetY, paint);
-            paint.setXfermode(null);
-        }
+        drawMasked(canvas, bitmap, bitmapMatrix, offsetX, offsetY, paint);
 
         // 设置描边
         if (borderWidth > 0 && borderPaint != null) {
@@ -49,10 +81,15 @@ public class GraphsMan {
         }
     }
 
-    public static Bitmap drawBitmap(Canvas canvas, Bitmap bitmap, float sideWidth, float sideHeight, int offsetX,
-                                    int offsetY, Paint paint, int flag) {
-        Bitmap resultBmp = null;
-        Matrix matrix = new Matrix();
+    /**
+     * 按缩放类型在指定区域内绘制bitmap, 通过矩阵变换完成缩放和裁剪, 不生成新的bitmap
+     */
+    public static void drawBitmap(Canvas canvas, Bitmap bitmap, float sideWidth, float sideHeight, int offsetX,
+                                  int offsetY, Paint paint, int flag) {
+        Scratch scratch = SCRATCH.get();
+        Matrix matrix = scratch.matrix;
+        float[] values = scratch.scaleValues;
+        matrix.reset();
         float scale = 0;
         float dx = 0;
         float dy = 0;
@@ -60,85 +97,43 @@ public class GraphsMan {
         switch (flag) {
             case AvatarView.SCALE_TYPE_CENTER_INSIDE:
                 // 保持图片的完整 , 尽量缩小.  比例不变
-                if (bitmap.getWidth() > bitmap.getHeight()) {
-                    scale = sideHeight / bitmap.getWidth();
-                    dy = (sideHeight - bitmap.getHeight() * scale) * 0.5f;
-                } else {
-                    scale = sideHeight / bitmap.getHeight();
-                    dx = (sideHeight - bitmap.getWidth() * scale) * 0.5f;
-                }
-                matrix.postScale(scale, scale);
-                matrix.postTranslate(dx, dy);
+                ScaleMan.centerInside(bitmap.getWidth(), bitmap.getHeight(), sideWidth, sideHeight, values);
+                scale = values[ScaleMan.SCALE];
+                dx = values[ScaleMan.DX];
+                dy = values[ScaleMan.DY];
+                matrix.setScale(scale, scale);
                 break;
             case AvatarView.SCALE_TYPE_CENTER_CROP:
-                // 尽量放大, 填充控件, 比例不变
-                if (sideHeight == sideWidth) {
-                    // 画布是一个正方形
-                    if (bitmap.getHeight() < bitmap.getWidth()) {
-                        scale = sideHeight / bitmap.getHeight();
-                        dx = (sideWidth - bitmap.getWidth() * scale) / (2 * scale);
-                    } else if (bitmap.getWidth() < bitmap.getHeight()) {
-                        scale = sideHeight / bitmap.getWidth();
-                        dy = (sideWidth - bitmap.getHeight() * scale) / (2 * scale);
-                    } else {
-                        scale = sideHeight / bitmap.getHeight();
-                        dy = dx = (sideWidth - bitmap.getWidth() * scale) / (2 * scale);
-
-                    }
-                    matrix.postScale(scale, scale);
-                    resultBmp = Bitmap.createBitmap(bitmap, (int) (dx < 0 ? -dx : dx), (int) (dy < 0 ? -dy : dy),
-                                                    (int) (bitmap.getWidth() + 2 * (dx < 0 ? dx : -dx)),
-                                                    (int) (bitmap.getHeight() + 2 * (dy < 0 ? dy : -dy)), matrix, true);
-                    canvas.drawBitmap(resultBmp, offsetX, offsetY, null);
-
-                    return resultBmp;
-                } else {
-                    // 画布不是一个正方形
-                    float scaleY = sideHeight / bitmap.getHeight();
-                    float scaleX = sideWidth / bitmap.getWidth();
-
-                    if (scaleY > scaleX) {
-                        scale = scaleY;
-                        dx = (sideWidth - bitmap.getWidth() * scale) / (2 * scale);
-                    } else if (scaleY < scaleX) {
-                        scale = scaleX;
-                        dy = (sideHeight - bitmap.getHeight() * scale) / (2 * scale);
-                    } else {
-                        scale = scaleX;
-                        dy = dx = (sideWidth - bitmap.getWidth() * scale) / (2 * scale);
-
-                    }
-
-                    matrix.postScale(scale, scale);
-
-                    resultBmp = Bitmap.createBitmap(bitmap, (int) (dx < 0 ? -dx : dx), (int) (dy < 0 ? -dy : dy),
-                                                    (int) (bitmap.getWidth() + 2 * (dx < 0 ? dx : -dx)),
-                                                    (int) (bitmap.getHeight() + 2 * (dy < 0 ? dy : -dy)), matrix, true);
-                    canvas.drawBitmap(resultBmp, offsetX, offsetY, null);
-
-                    return resultBmp;
-                }
+                // 尽量放大, 填充控件, 比例不变, 超出部分裁剪掉
+                ScaleMan.centerCrop(bitmap.getWidth(), bitmap.getHeight(), sideWidth, sideHeight, values);
+                scale = values[ScaleMan.SCALE];
+                matrix.setScale(scale, scale);
+                matrix.postTranslate(offsetX + values[ScaleMan.DX], offsetY + values[ScaleMan.DY]);
+
+                int saveCount = canvas.save();
+                canvas.clipRect(offsetX, offsetY, offsetX + sideWidth, offsetY + sideHeight);
+                canvas.drawBitmap(bitmap, matrix, paint == null ? BITMAP_PAINT : paint);
+                canvas.restoreToCount(saveCount);
+                return;
             case AvatarView.SCALE_TYPE_FIX_XY:
                 // 填充控件, 保证图片完整,  比例可能会变
                 float tempX = sideWidth / bitmap.getWidth();
                 float tempY = sideHeight / bitmap.getHeight();
-                matrix.postScale(tempX, tempY);
+                matrix.setScale(tempX, tempY);
                 if ((tempX <= 1) && (tempX >= 0.9f) && (tempY >= 0.9f) && (tempY <= 1)) {
                     scale = 1;
                 }
                 break;
             default:
-                return resultBmp;
+                return;
         }
 
         if ((scale <= 1) && (scale >= 0.9f)) {
-            canvas.drawBitmap(bitmap, offsetX + dx, offsetY + dy, null);
-        } else {
-            canvas.drawBitmap(Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true),
-                              offsetX + dx, offsetY + dy, null);
+            // 缩放比例接近原图时不做缩放
+            matrix.reset();
         }
-
-        return resultBmp;
+        matrix.postTranslate(offsetX + dx, offsetY + dy);
+        canvas.drawBitmap(bitmap, matrix, paint == null ? BITMAP_PAINT : paint);
     }
 
     /**
@@ -159,17 +154,25 @@ public class GraphsMan {
     public static void drawCornerRectBorder(Canvas canvas, Bitmap bitmap, float sideWidth, float sideHeight,
                                             float cornerX, float cornerY, int offsetX, int offsetY, Paint paint,
                                             float borderWidth, Paint borderPaint) {
+        drawCornerRectBorder(canvas, bitmap, null, sideWidth, sideHeight, cornerX, cornerY, offsetX, offsetY, paint,
+                             borderWidth, borderPaint);
+    }
+
+    /**
+     * 合成一个圆角矩形图片
+     *
+     * @param bitmapMatrix bitmap绘制时的变换, 为null时按偏移位置原样绘制
+     */
+    public static void drawCornerRectBorder(Canvas canvas, Bitmap bitmap, Matrix bitmapMatrix, float sideWidth,
+                                            float sideHeight, float cornerX, float cornerY, int offsetX, int offsetY,
+                                            Paint paint, float borderWidth, Paint borderPaint) {
         //画出一个圆角矩形
-        RectF rectF = new RectF(offsetX, offsetY, sideWidth + offsetX, sideHeight + offsetY);
+        RectF rectF = SCRATCH.get().rectF;
+        rectF.set(offsetX, offsetY, sideWidth + offsetX, sideHeight + offsetY);
         canvas.drawRoundRect(rectF, cornerX, cornerY, paint);
 
         // 表明只需要要画出想要的图形即可, 可能实现合成方式是Shader着色器,而不是setXformode
-        if (bitmap != null) {
-            //设置混合的模式
-            paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
-            canvas.drawBitmap(bitmap, offsetX, offsetY, paint);
-            paint.setXfermode(null);
-        }
+        drawMasked(canvas, bitmap, bitmapMatrix, offsetX, offsetY, paint);
         // 判断是否需要描边
         if (borderWidth > 0 && borderPaint != null) {
             // 如果有bitmap, 描边应该以bitmap的宽高设置描边配置, 否则可能会出现描边缺失
@@ -204,15 +207,21 @@ public class GraphsMan {
      */
     public static void drawCircle(Canvas canvas, Bitmap bitmap, float centerX, float centerY, float radius, Paint paint,
                                   float borderWidth, Paint borderPaint) {
+        drawCircle(canvas, bitmap, null, centerX, centerY, radius, paint, borderWidth, borderPaint);
+    }
+
+    /**
+     * 合成一个圆
+     *
+     * @param bitmapMatrix bitmap绘制时的变换, 为null时从原点原样绘制
+     */
+    public static void drawCircle(Canvas canvas, Bitmap bitmap, Matrix bitmapMatrix, float centerX, float centerY,
+                                  float radius, Paint paint, float borderWidth, Paint borderPaint) {
 
         canvas.drawCircle(centerX, centerY, radius, paint);
 
         // 表明只需要要画出想要的图形即可, 可能实现合成方式是Shader着色器,而不是setXfermode
-        if (bitmap != null) {
-            paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
-            canvas.drawBitmap(bitmap, 0, 0, paint);
-            paint.setXfermode(null);
-        }
+        drawMasked(canvas, bitmap, bitmapMatrix, 0, 0, paint);
 
         // 描边处理
         if (borderWidth > 0 && borderPaint != null) {
@@ -230,7 +239,8 @@ public class GraphsMan {
      * @param textPaint 文字画笔
      */
     public static void drawText(Canvas canvas, String text, float centerX, float centerY, Paint textPaint) {
-        Paint.FontMetrics fontMetrics = textPaint.getFontMetrics();
+        Paint.FontMetrics fontMetrics = SCRATCH.get().fontMetrics;
+        textPaint.getFontMetrics(fontMetrics);
         canvas.drawText(text, 0, text.length(), centerX, centerY + Math.abs(fontMetrics.top + fontMetrics.bottom) / 2,
                         textPaint);
     }
@@ -250,6 +260,16 @@ public class GraphsMan {
      */
     public static void drawOval(Canvas canvas, Bitmap bitmap, RectF rectF, float offsetX, float offsetY, Paint paint,
                                 float borderWidth, Paint borderPaint) {
+        drawOval(canvas, bitmap, null, rectF, offsetX, offsetY, paint, borderWidth, borderPaint);
+    }
+
+    /**
+     * 合成一个椭圆
+     *
+     * @param bitmapMatrix bitmap绘制时的变换, 为null时按偏移位置原样绘制
+     */
+    public static void drawOval(Canvas canvas, Bitmap bitmap, Matrix bitmapMatrix, RectF rectF, float offsetX,
+                                float offsetY, Paint paint, float borderWidth, Paint borderPaint) {
         // 位置校正
         rectF.right += offsetX;
         rectF.left += offsetX;
@@ -258,11 +278,7 @@ public class GraphsMan {
         canvas.drawOval(rectF, paint);
 
         // 表明只需要要画出想要的图形即可, 可能实现合成方式是Shader着色器,而不是setXformode
-        if (bitmap != null) {
-            paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
-            canvas.drawBitmap(bitmap, offsetX, offsetY, paint);
-            paint.setXfermode(null);
-        }
+        drawMasked(canvas, bitmap, bitmapMatrix, offsetX, offsetY, paint);
 
         // 开始描边
         if (borderWidth > 0 && borderPaint != null) {
@@ -291,8 +307,19 @@ public class GraphsMan {
      */
     public static void drawStarFrame(Canvas canvas, Bitmap bitmap, int radius, int offsetX, int offsetY, Paint paint,
                                      float borderWidth, Paint borderPaint) {
+        drawStarFrame(canvas, bitmap, null, radius, offsetX, offsetY, paint, borderWidth, borderPaint);
+    }
+
+    /**
+     * 合成五角星
+     *
+     * @param bitmapMatrix bitmap绘制时的变换, 为null时从原点原样绘制
+     */
+    public static void drawStarFrame(Canvas canvas, Bitmap bitmap, Matrix bitmapMatrix, int radius, int offsetX,
+                                     int offsetY, Paint paint, float borderWidth, Paint borderPaint) {
+        Scratch scratch = SCRATCH.get();
         int half = radius;
-        Path path = new Path();
+        Path path = scratch.path;
 
         boolean isSupportBorder = true;          // 判断是否支持描边
         int layoutId = -1;                       // 图层id
@@ -302,36 +329,23 @@ public class GraphsMan {
             isSupportBorder = false;
             Log.w(TAG, "此操作版本不支持五角星的描边绘制");
         }
+        boolean hasBorder = isSupportBorder && borderWidth > 0 && borderPaint != null;
 
-        // 开始画描边
-        if (isSupportBorder && borderWidth > 0 && borderPaint != null) {
+        // 描边所在的外圈五角星的边长的一半
+        int borderHalf = half;
+        if (hasBorder) {
             // 对描边进行边界的最大长度进行判断 不得超过半径的1/6
             if (borderWidth * 3 > half) {
                 borderWidth = half / 3;
                 borderPaint.setStrokeWidth(borderWidth);
             }
 
-            canvas.translate(borderWidth * 2f, borderWidth * 2f);
             half -= borderWidth * 2f;
-            // E --> B --> D --> A --> C
-            path.moveTo(offsetX, half * 0.73f + offsetY);   //E
-            path.lineTo(half * 2 + offsetX, half * 0.73f + offsetY);//B
-            path.lineTo(half * 0.38f + offsetX, half * 1.9f + offsetY);//D
-            path.lineTo(half + offsetX, offsetY);//A
-            path.lineTo(half * 1.62f + offsetX, half * 1.9f + offsetY);//C
-            path.close();
-            canvas.drawPath(path, borderPaint);
-            canvas.translate(-borderWidth * 2, -borderWidth * 2);
-
+            borderHalf = half;
             half -= borderWidth * 1.5f;
         }
 
-        // 提取图层, 此方法需要sdk21, 已经加了判断
-        if (bitmap != null && Build.VERSION.SDK_INT >= 21) {
-            layoutId = canvas.saveLayer(new RectF(0, 0, (radius + offsetX) * 2, (radius + offsetY) * 2), null);
-        }
-
-        // 提供给单张图片处理策略使用
+        // 提供给单张图片处理策略使用, 直接画在控件画布上, 需要单独的图层完成混合
         if (paint == null && bitmap != null) {
             isOneStrategy = true;
             paint = new Paint();
@@ -347,44 +361,104 @@ public class GraphsMan {
             matrix.postScale(scale, scale);
             // 缩放
             bitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+
+            if (Build.VERSION.SDK_INT >= 21) {
+                RectF layerRect = scratch.rectF;
+                layerRect.set(0, 0, (radius + offsetX) * 2, (radius + offsetY) * 2);
+                layoutId = canvas.saveLayer(layerRect, null);
+            }
         }
 
+        // 开始画出五角星, 由单位模板缩放得到
+        float starX = offsetX;
+        float starY = offsetY;
+        if (hasBorder) {
+            starX += borderWidth * 3.5f;
+            starY += borderWidth * 3.6f;
+        }
+        ShapeTemplates.transform(ShapeTemplates.STAR, starX, starY, half * 2, half * 2, path);
+        canvas.drawPath(path, paint);
 
-        // 开始画出五角星
-        // E --> B --> D --> A --> C
-        path.reset();
-        if (isSupportBorder && borderWidth > 0 && borderPaint != null) {
-            canvas.translate(borderWidth * 3.5f, borderWidth * 3.6f);
+        // 表明只需要要画出想要的图形即可, 可能实现合成方式是Shader着色器,而不是setXformode
+        if (isOneStrategy) {
+            paint.setXfermode(XFERMODE_SRC_IN);
+            canvas.drawBitmap(bitmap, radius + offsetX - bitmap.getWidth() / 2,
+                              radius + offsetY - bitmap.getHeight() / 2, paint);
+            paint.setXfermode(null);
+        } else {
+            drawMasked(canvas, bitmap, bitmapMatrix, 0, 0, paint);
         }
-        path.moveTo(offsetX, half * 0.73f + offsetY);   //E
-        path.lineTo(half * 2 + offsetX, half * 0.73f + offsetY);//B
-        path.lineTo(half * 0.38f + offsetX, half * 1.9f + offsetY);//D
-        path.lineTo(half + offsetX, offsetY);//A
-        path.lineTo(half * 1.62f + offsetX, half * 1.9f + offsetY);//C
 
-        canvas.drawPath(path, paint);
+        if (layoutId != -1) {
+            canvas.restoreToCount(layoutId);
+        }
 
-        if (bitmap != null && isSupportBorder && borderWidth > 0 && borderPaint != null) {
-            canvas.translate(-borderWidth * 3.5f, -borderWidth * 3.6f);
+        // 最后画描边, 混合只作用于已画好的五角星, 不再需要单独的图层
+        if (hasBorder) {
+            float borderOffset = borderWidth * 2f;
+            ShapeTemplates.transform(ShapeTemplates.STAR, offsetX + borderOffset, offsetY + borderOffset,
+                                     borderHalf * 2, borderHalf * 2, path);
+            canvas.drawPath(path, borderPaint);
         }
+    }
 
-        // 表明只需要要画出想要的图形即可, 可能实现合成方式是Shader着色器,而不是setXformode
-        if (bitmap != null) {
-            paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
+    /**
+     * 按单位尺寸模板合成任意图形, 如{@link ShapeTemplates#polygon(int)}, {@link ShapeTemplates#star(int, float)}
+     *
+     * @param canvas       画布
+     * @param bitmap       需要合成的图片, 使用着色器时传入null
+     * @param bitmapMatrix bitmap绘制时的变换, 为null时按偏移位置原样绘制
+     * @param template     单位尺寸的图形模板
+     * @param sideWidth    图形宽度
+     * @param sideHeight   图形高度
+     * @param offsetX      图形左上角x
+     * @param offsetY      图形左上角y
+     * @param paint        画笔
+     * @param borderWidth  描边宽度 , 不需要可以设置0
+     * @param borderPaint  描边画笔  不需要可以设置null
+     */
+    public static void drawShape(Canvas canvas, Bitmap bitmap, Matrix bitmapMatrix, Path template, float sideWidth,
+                                 float sideHeight, int offsetX, int offsetY, Paint paint, float borderWidth,
+                                 Paint borderPaint) {
+        Path path = SCRATCH.get().path;
+        ShapeTemplates.transform(template, offsetX, offsetY, sideWidth, sideHeight, path);
+        canvas.drawPath(path, paint);
 
-            if (isOneStrategy) {
-                canvas.drawBitmap(bitmap, radius + offsetX - bitmap.getWidth() / 2,
-                                  radius + offsetY - bitmap.getHeight() / 2, paint);
+        drawMasked(canvas, bitmap, bitmapMatrix, offsetX, offsetY, paint);
 
-            } else {
-                canvas.drawBitmap(bitmap, 0, 0, paint);
-            }
-            paint.setXfermode(null);
+        // 描边沿图形内缩半个描边宽度
+        if (borderWidth > 0 && borderPaint != null) {
+            float off = borderWidth / 2f;
+            ShapeTemplates.transform(template, offsetX + off, offsetY + off, sideWidth - borderWidth,
+                                     sideHeight - borderWidth, path);
+            canvas.drawPath(path, borderPaint);
         }
+    }
 
-        if (bitmap != null && isSupportBorder && borderWidth > 0 && borderPaint != null && layoutId != -1) {
-            canvas.restore();
+    /**
+     * 以SRC_IN模式把bitmap合成到已画好的图形上
+     */
+    private static void drawMasked(Canvas canvas, Bitmap bitmap, Matrix bitmapMatrix, float offsetX, float offsetY,
+                                   Paint paint) {
+        if (bitmap == null) {
+            return;
+        }
+
+        //设置混合的模式
+        paint.setXfermode(XFERMODE_SRC_IN);
+        if (bitmapMatrix != null) {
+            if (offsetX != 0 || offsetY != 0) {
+                Matrix matrix = SCRATCH.get().matrix;
+                matrix.set(bitmapMatrix);
+                matrix.postTranslate(offsetX, offsetY);
+                canvas.drawBitmap(bitmap, matrix, paint);
+            } else {
+                canvas.drawBitmap(bitmap, bitmapMatrix, paint);
+            }
+        } else {
+            canvas.drawBitmap(bitmap, offsetX, offsetY, paint);
         }
+        paint.setXfermode(null);
     }
 
     static float cos(int num) {
@@ -2,30 +2,52 @@ package cn.byk.pandora.avatarview.util;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.RequestBuilder;
-import com.bumptech.glide.request.target.CustomTarget;
-import com.bumptech.glide.request.transition.Transition;
-
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import cn.byk.pandora.avatarview.AvatarView;
 import cn.byk.pandora.avatarview.bean.ResInfo;
+import cn.byk.pandora.avatarview.source.AvatarImageSource;
+import cn.byk.pandora.avatarview.source.GlideImageSource;
+import cn.byk.pandora.avatarview.source.LocalImageSource;
 
 /**
  * Created by Byk on 2017/1/10.
  * <p>
- * Glide
+ * 按地址加载头像图片, 具体的加载交给{@link AvatarImageSource}
+ * <p>
+ * 来源的选择顺序: 控件单独设置的, 全局设置的, 内置的{@link LocalImageSource}, 依赖中存在时的{@link GlideImageSource}
  */
 public class ImageLoader {
 
     private static volatile ImageLoader sInstance;
 
+    private final LocalImageSource mLocalSource = new LocalImageSource();
+    private AvatarImageSource mGlideSource;
+
+    /**
+     * 全局设置的来源, 为null时只使用内置来源
+     */
+    private volatile AvatarImageSource mImageSource;
+
+    /**
+     * 正在进行的多图成员加载, key由来源, 地址, 目标大小和解码选项组成
+     */
+    private final HashMap<String, InFlight> mInFlight = new HashMap<>();
+
+    /**
+     * 合并到已有加载中, 没有再次发起请求的次数
+     */
+    private final AtomicInteger mDedupeCount = new AtomicInteger();
+
     private ImageLoader() {}
 
     public static synchronized ImageLoader getInstance() {
@@ -39,25 +61,68 @@ public class ImageLoader {
         return sInstance;
     }
 
-    public void load(Context context, String url, CustomTarget<Bitmap> target) {
-        load(context, url, target, null, null);
+    /**
+     * 设置全局的加载来源, 控件没有单独设置时使用. 不能加载的地址仍然交给内置来源
+     */
+    public void setImageSource(AvatarImageSource source) {
+        mImageSource = source;
     }
 
-    public void load(Context context, String url, CustomTarget<Bitmap> target, Drawable placeholder,
-            Drawable errorDrawable) {
-        RequestBuilder<Bitmap> request = Glide.with(context)
-                                              .asBitmap()
-                                              .load(url);
+    public AvatarImageSource getImageSource() {
+        return mImageSource;
+    }
+
+    /**
+     * 找出加载这个地址的来源, 都不能加载时返回null
+     *
+     * @param preferred 控件单独设置的来源, 可以为null
+     */
+    public AvatarImageSource resolveSource(AvatarImageSource preferred, String url) {
+        if (preferred != null && preferred.canLoad(url)) {
+            return preferred;
+        }
+
+        AvatarImageSource global = mImageSource;
+        if (global != null && global.canLoad(url)) {
+            return global;
+        }
 
-        if (placeholder != null) {
-            request = request.placeholder(placeholder);
+        if (mLocalSource.canLoad(url)) {
+            return mLocalSource;
         }
+        return obtainGlideSource();
+    }
+
+    private synchronized AvatarImageSource obtainGlideSource() {
+        if (mGlideSource == null && GlideImageSource.isAvailable()) {
+            mGlideSource = new GlideImageSource();
+        }
+        return mGlideSource;
+    }
 
-        if (errorDrawable != null) {
-            request = request.error(errorDrawable);
+    /**
+     * 为控件加载一张图片, 结果在主线程交给控件, 控件重新设置内容后到达的结果被丢弃
+     *
+     * @param source       控件单独设置的来源, 可以为null
+     * @param preferRgb565 为true时没有透明通道的图片解码为RGB_565
+     * @return 加载句柄; 没有能加载这个地址的来源时直接显示错误图, 返回null
+     */
+    public AvatarImageSource.Job load(AvatarView view, AvatarImageSource source, String url, int width, int height,
+            boolean fromNormal, Drawable placeholder, Drawable errorDrawable, boolean preferRgb565) {
+        AvatarImageSource resolved = resolveSource(source, url);
+        if (resolved == null) {
+            view.onLoadResult(view.getLoadGeneration(), errorDrawable, fromNormal);
+            return null;
         }
 
-        request.into(target);
+        ViewCallback callback = new ViewCallback(view, fromNormal, errorDrawable);
+        AvatarImageSource.Job job = resolved.load(view.getContext(), url, width, height, false, preferRgb565,
+                                                  callback);
+        // 来源同步返回了结果(例如内存缓存命中)时不再显示占位图
+        if (!callback.isDelivered()) {
+            view.onLoadResult(callback.mGeneration, placeholder, fromNormal);
+        }
+        return job;
     }
 
     public void load(Context context, List<String> urls, MultiLoadTarget target) {
@@ -66,82 +131,420 @@ public class ImageLoader {
 
     public void load(Context context, List<String> urls, MultiLoadTarget target, Drawable placeholder,
             Drawable errorDrawable) {
-        target.max(urls.size());
-        for (String url : urls) {
-            CustomTarget<Bitmap> customTarget =
-                    createTarget(null, url, target.getWidth(), target.getHeight(), false, target);
-            load(context, url, customTarget, placeholder, errorDrawable);
+        target.placeholder(placeholder)
+              .max(urls.size());
+        for (int i = 0, size = urls.size(); i < size; i++) {
+            loadShared(context, urls.get(i), target, i, errorDrawable);
+        }
+        // 先以占位图显示完整的布局
+        target.requestDeliver();
+    }
+
+    /**
+     * 加载多图中的一张. 相同来源, 地址, 大小和解码选项的加载正在进行时只登记等待, 结果到达后分发给所有等待的位置
+     */
+    private void loadShared(Context context, String url, MultiLoadTarget target, int slot, Drawable errorDrawable) {
+        AvatarImageSource source = resolveSource(target.getSource(), url);
+        if (source == null) {
+            target.markFailed();
+            target.add(slot, url, BitmapMan.toBitmap(errorDrawable));
+            return;
+        }
+
+        int width = target.getWidth(slot);
+        int height = target.getHeight(slot);
+        boolean exactSize = target.isExactSize();
+        boolean preferRgb565 = target.isPreferRgb565();
+        String key = buildKey(source, url, width, height, exactSize, preferRgb565);
+
+        InFlight flight;
+        synchronized (mInFlight) {
+            flight = mInFlight.get(key);
+            if (flight != null) {
+                flight.add(target, slot);
+                target.mJoined.add(flight);
+                mDedupeCount.incrementAndGet();
+                return;
+            }
+            flight = new InFlight(key, url, errorDrawable);
+            flight.add(target, slot);
+            target.mJoined.add(flight);
+            mInFlight.put(key, flight);
         }
+        // 共用的加载可能属于多个页面, 不能跟随其中某一个页面的生命周期被取消
+        flight.mJob = source.load(context.getApplicationContext(), url, width, height, exactSize, preferRgb565,
+                                  flight);
     }
 
-    public CustomTarget<Bitmap> createTarget(final AvatarView view, String url, int width, int height,
-            boolean fromNormal) {
-        return createTarget(view, url, width, height, fromNormal, null);
+    private static String buildKey(AvatarImageSource source, String url, int width, int height, boolean exactSize,
+            boolean preferRgb565) {
+        return new StringBuilder(url == null ? 32 : url.length() + 32).append(System.identityHashCode(source))
+                                                                      .append('|')
+                                                                      .append(url)
+                                                                      .append('|')
+                                                                      .append(width)
+                                                                      .append('x')
+                                                                      .append(height)
+                                                                      .append(exactSize ? 'c' : 'f')
+                                                                      .append(preferRgb565 ? '5' : '8')
+                                                                      .toString();
     }
 
-    public CustomTarget<Bitmap> createTarget(final AvatarView view, final String url, int width, int height,
-            final boolean fromNormal, final MultiLoadTarget multiLoadTarget) {
-        return new CustomTarget<Bitmap>(width, height) {
-            @Override
-            public void onResourceReady(@NonNull Bitmap resource, @Nullable Transition<? super Bitmap> transition) {
-                if (view != null) {
-                    view.setBitmap(resource, fromNormal);
+    /**
+     * 取消一次多图加载. 与其他控件共用的成员加载只移除这个目标, 没有其他等待者时才真正取消请求. 在主线程调用
+     * <p>
+     * 只处理这个目标加入过的加载, 不遍历所有正在进行的加载
+     */
+    public void cancel(MultiLoadTarget target) {
+        target.cancel();
+
+        ArrayList<InFlight> orphans = null;
+        synchronized (mInFlight) {
+            ArrayList<InFlight> joined = target.mJoined;
+            for (int i = 0, size = joined.size(); i < size; i++) {
+                InFlight flight = joined.get(i);
+                if (flight.remove(target) && flight.isEmpty() && mInFlight.get(flight.mKey) == flight) {
+                    mInFlight.remove(flight.mKey);
+                    if (orphans == null) {
+                        orphans = new ArrayList<>();
+                    }
+                    orphans.add(flight);
                 }
+            }
+            joined.clear();
+        }
 
-                if (multiLoadTarget != null) {
-                    multiLoadTarget.add(url, resource);
+        if (orphans != null) {
+            for (InFlight flight : orphans) {
+                if (flight.mJob != null) {
+                    flight.mJob.cancel();
                 }
             }
+        }
+    }
 
-            @Override
-            public void onLoadCleared(@Nullable Drawable placeholder) {}
+    /**
+     * 累计被合并的加载次数
+     */
+    public int getDedupeCount() {
+        return mDedupeCount.get();
+    }
 
-            @Override
-            public void onLoadFailed(@Nullable Drawable errorDrawable) {
-                super.onLoadFailed(errorDrawable);
-                if (view != null) {
-                    view.setDrawable(errorDrawable, fromNormal);
+    /**
+     * 当前正在进行的多图成员加载数量
+     */
+    public int getInFlightCount() {
+        synchronized (mInFlight) {
+            return mInFlight.size();
+        }
+    }
+
+    public MultiLoadTarget createMultiTarget(final AvatarView view, int width, int height) {
+        return new MultiLoadTarget(view).size(width, height);
+    }
+
+    /**
+     * 每个位置使用各自的目标大小, 图片会被裁剪为刚好的宽高
+     */
+    public MultiLoadTarget createMultiTarget(final AvatarView view, int[] widths, int[] heights) {
+        return new MultiLoadTarget(view).size(widths, heights);
+    }
+
+    /**
+     * 清理Glide的内存缓存, 依赖中没有Glide时不做处理
+     */
+    public void clearMemory(Context context) {
+        if (GlideImageSource.isAvailable()) {
+            GlideImageSource.clearMemory(context);
+        }
+    }
+
+    //========================================================================================//
+
+    /**
+     * 单张加载的回调, 在主线程把结果交给控件
+     */
+    private static class ViewCallback implements AvatarImageSource.Callback {
+
+        private final AvatarView mView;
+        private final boolean mFromNormal;
+        private final Drawable mErrorDrawable;
+
+        /**
+         * 发起时控件的加载标记, 控件重新设置内容后结果不再显示
+         */
+        private final int mGeneration;
+
+        private volatile boolean mDelivered;
+
+        ViewCallback(AvatarView view, boolean fromNormal, Drawable errorDrawable) {
+            mView = view;
+            mFromNormal = fromNormal;
+            mErrorDrawable = errorDrawable;
+            mGeneration = view.getLoadGeneration();
+        }
+
+        boolean isDelivered() {
+            return mDelivered;
+        }
+
+        @Override
+        public void onReady(final Bitmap bitmap) {
+            mDelivered = true;
+            RenderExecutor.runOnMain(new Runnable() {
+                @Override
+                public void run() {
+                    mView.onLoadResult(mGeneration, bitmap, mFromNormal);
+                }
+            });
+        }
+
+        @Override
+        public void onFailed() {
+            mDelivered = true;
+            RenderExecutor.runOnMain(new Runnable() {
+                @Override
+                public void run() {
+                    mView.onLoadResult(mGeneration, mErrorDrawable, mFromNormal);
                 }
+            });
+        }
+
+        @Override
+        public void onCleared() {}
 
-                if (multiLoadTarget != null) {
-                    multiLoadTarget.add(url, BitmapMan.toBitmap(errorDrawable));
+        @Override
+        public void onReleased(final Bitmap bitmap) {
+            RenderExecutor.runOnMain(new Runnable() {
+                @Override
+                public void run() {
+                    mView.onLoadReleased(mGeneration, bitmap);
+                }
+            });
+        }
+    }
+
+    /**
+     * 一次正在进行的加载和等待它的所有位置
+     */
+    private class InFlight implements AvatarImageSource.Callback {
+
+        private final String mKey;
+        private final String mUrl;
+        private final Drawable mErrorDrawable;
+
+        private final ArrayList<MultiLoadTarget> mTargets = new ArrayList<>(2);
+        private final ArrayList<Integer> mSlots = new ArrayList<>(2);
+
+        private volatile AvatarImageSource.Job mJob;
+
+        /**
+         * 已经分发过结果的目标, 图片被来源收回时通知它们. 不能让来源持有的回调留住控件
+         */
+        private volatile WeakReference<MultiLoadTarget>[] mDelivered;
+
+        InFlight(String key, String url, Drawable errorDrawable) {
+            mKey = key;
+            mUrl = url;
+            mErrorDrawable = errorDrawable;
+        }
+
+        /**
+         * 只在持有{@link #mInFlight}锁时调用
+         */
+        void add(MultiLoadTarget target, int slot) {
+            mTargets.add(target);
+            mSlots.add(slot);
+        }
+
+        /**
+         * 移除一个目标的所有等待位置, 只在持有{@link #mInFlight}锁时调用
+         */
+        boolean remove(MultiLoadTarget target) {
+            boolean removed = false;
+            for (int i = mTargets.size() - 1; i >= 0; i--) {
+                if (mTargets.get(i) == target) {
+                    mTargets.remove(i);
+                    mSlots.remove(i);
+                    removed = true;
                 }
             }
+            return removed;
+        }
 
-            @Override
-            public void onLoadStarted(@Nullable Drawable placeholder) {
-                super.onLoadStarted(placeholder);
-                if (view != null) {
-                    view.setDrawable(placeholder, fromNormal);
+        boolean isEmpty() {
+            return mTargets.isEmpty();
+        }
+
+        @Override
+        public void onReady(Bitmap bitmap) {
+            finish(bitmap, false);
+        }
+
+        @Override
+        public void onFailed() {
+            finish(BitmapMan.toBitmap(mErrorDrawable), true);
+        }
+
+        @Override
+        public void onCleared() {
+            // 请求被来源取消, 等待的位置按失败处理, 之后相同的加载重新发起
+            finish(BitmapMan.toBitmap(mErrorDrawable), true);
+        }
+
+        @Override
+        public void onReleased(Bitmap bitmap) {
+            WeakReference<MultiLoadTarget>[] delivered = mDelivered;
+            mDelivered = null;
+            if (delivered == null) {
+                return;
+            }
+            for (WeakReference<MultiLoadTarget> reference : delivered) {
+                MultiLoadTarget target = reference.get();
+                if (target != null) {
+                    target.release(bitmap);
                 }
             }
-        };
-    }
+        }
 
-    public MultiLoadTarget createMultiTarget(final AvatarView view, int width, int height) {
-        return new MultiLoadTarget(view).size(width, height);
-    }
+        private void remove() {
+            synchronized (mInFlight) {
+                if (mInFlight.get(mKey) == this) {
+                    mInFlight.remove(mKey);
+                }
+            }
+        }
 
-    public void clearMemory(Context context) {
-        Glide.get(context)
-             .clearMemory();
+        private void finish(Bitmap bitmap, boolean failed) {
+            MultiLoadTarget[] targets;
+            int[] slots;
+            synchronized (mInFlight) {
+                remove();
+                int size = mTargets.size();
+                targets = mTargets.toArray(new MultiLoadTarget[size]);
+                slots = new int[size];
+                for (int i = 0; i < size; i++) {
+                    slots[i] = mSlots.get(i);
+                }
+                mTargets.clear();
+                mSlots.clear();
+            }
+
+            if (!failed) {
+                @SuppressWarnings("unchecked")
+                WeakReference<MultiLoadTarget>[] delivered = new WeakReference[targets.length];
+                for (int i = 0; i < targets.length; i++) {
+                    delivered[i] = new WeakReference<>(targets[i]);
+                }
+                mDelivered = delivered;
+            }
+
+            for (int i = 0; i < targets.length; i++) {
+                if (failed) {
+                    targets[i].markFailed();
+                }
+                targets[i].add(slots[i], mUrl, bitmap);
+            }
+        }
     }
 
     //========================================================================================//
-    public static class MultiLoadTarget {
 
-        private ArrayList<ResInfo> mResInfos;
+    /**
+     * 多张图片的加载结果. 每张图片放回请求时的位置, 每完成一张就刷新一次控件, 还没有完成的位置显示占位图.
+     * 加载回调可以来自任意线程, 刷新控件总是在主线程
+     */
+    public static class MultiLoadTarget {
 
         private AvatarView mView;
         private int mWidth;
         private int mHeight;
 
+        /**
+         * 每个位置的目标大小, 为null时所有位置使用统一大小
+         */
+        private int[] mWidths;
+        private int[] mHeights;
+
+        private boolean mPreferRgb565;
+
+        /**
+         * 控件单独设置的加载来源, 为null时使用全局来源
+         */
+        private AvatarImageSource mSource;
+
+        /**
+         * 加载结果放在控件中的起始位置, 前面是不需要加载的子元素
+         */
+        private int mStart;
+
+        /**
+         * 创建时控件的加载标记, 控件重新设置内容后不再刷新
+         */
+        private final int mGeneration;
+        private volatile boolean mCancelled;
+
+        /**
+         * 有位置加载失败, 显示的是错误图
+         */
+        private volatile boolean mFailed;
+
+        private Drawable mPlaceholder;
+        private ResInfo mPlaceholderRes;
+
         private int mMax;
-        private int mCount;
+
+        /**
+         * 最近一次交给控件的结果中所有位置都已经完成, 只在主线程读写
+         */
+        private boolean mDelivered;
+
+        private AtomicReferenceArray<ResInfo> mSlots = new AtomicReferenceArray<>(0);
+
+        /**
+         * 这个目标加入过的成员加载, 取消时只从这些加载中移除. 只在持有{@link ImageLoader#mInFlight}锁时访问
+         */
+        private final ArrayList<InFlight> mJoined = new ArrayList<>();
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        /**
+         * 已经有等待执行的刷新, 连续完成的多张图片合并为一次刷新
+         */
+        private final AtomicBoolean mDeliverPending = new AtomicBoolean();
+
+        private final Runnable mDeliver = new Runnable() {
+            @Override
+            public void run() {
+                mDeliverPending.set(false);
+                deliver();
+            }
+        };
 
         public MultiLoadTarget(AvatarView view) {
-            mResInfos = new ArrayList<>();
             mView = view;
+            mGeneration = view.getLoadGeneration();
+        }
+
+        /**
+         * 取消后到达的结果全部丢弃, 见{@link ImageLoader#cancel(MultiLoadTarget)}
+         */
+        public void cancel() {
+            mCancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * 标记有位置加载失败, 需要在放入结果之前调用
+         */
+        public void markFailed() {
+            mFailed = true;
+        }
+
+        public boolean hasFailed() {
+            return mFailed;
         }
 
         public int getWidth() {
@@ -152,30 +555,221 @@ public class ImageLoader {
             return mHeight;
         }
 
+        /**
+         * 第index个位置的目标宽度, 没有设置各自大小时返回统一大小
+         */
+        public int getWidth(int index) {
+            return mWidths != null && index < mWidths.length ? mWidths[index] : mWidth;
+        }
+
+        public int getHeight(int index) {
+            return mHeights != null && index < mHeights.length ? mHeights[index] : mHeight;
+        }
+
+        /**
+         * 是否按每个位置的大小精确加载
+         */
+        public boolean isExactSize() {
+            return mWidths != null;
+        }
+
         public MultiLoadTarget size(int width, int height) {
             mWidth = width;
             mHeight = height;
+            mWidths = null;
+            mHeights = null;
+            return this;
+        }
+
+        /**
+         * 设置每个位置各自的目标大小, 通常取自布局规则的计算结果
+         */
+        public MultiLoadTarget size(int[] widths, int[] heights) {
+            mWidths = widths;
+            mHeights = heights;
+            if (widths.length > 0) {
+                mWidth = widths[0];
+                mHeight = heights[0];
+            }
+            return this;
+        }
+
+        public boolean isPreferRgb565() {
+            return mPreferRgb565;
+        }
+
+        /**
+         * 没有透明通道的图片是否解码为RGB_565
+         */
+        public MultiLoadTarget preferRgb565(boolean preferRgb565) {
+            mPreferRgb565 = preferRgb565;
+            return this;
+        }
+
+        public AvatarImageSource getSource() {
+            return mSource;
+        }
+
+        public MultiLoadTarget source(AvatarImageSource source) {
+            mSource = source;
             return this;
         }
 
         public MultiLoadTarget max(int amount) {
             mMax = amount;
+            mFailed = false;
+            mDelivered = false;
+            mSlots = new AtomicReferenceArray<>(amount);
+            mCount.set(0);
+            return this;
+        }
+
+        /**
+         * 设置加载结果在控件中的起始位置
+         */
+        public MultiLoadTarget start(int index) {
+            mStart = index;
+            return this;
+        }
+
+        /**
+         * 设置还没有完成的位置显示的占位图, 为null时显示空白的文字底色
+         */
+        public MultiLoadTarget placeholder(Drawable placeholder) {
+            mPlaceholder = placeholder;
+            mPlaceholderRes = null;
             return this;
         }
 
+        /**
+         * 已经完成的数量
+         */
+        public int getCount() {
+            return mCount.get();
+        }
+
+        public boolean isComplete() {
+            return mCount.get() >= mMax;
+        }
+
+        /**
+         * 所有位置的结果都已经交给了控件, 在主线程调用. {@link #isComplete()}为true时最后一次刷新可能还在等待执行
+         */
+        public boolean isDelivered() {
+            return mDelivered;
+        }
+
+        /**
+         * 把当前结果交给控件, 在主线程调用
+         */
         public void ready(ArrayList<ResInfo> resInfos) {
-            mView.setImagesWithMix(resInfos);
+            mView.onLoadResults(mGeneration, mStart, resInfos);
         }
 
+        /**
+         * 放入第一个空位, 见{@link #add(int, String, Bitmap)}
+         */
         public void add(String url, Bitmap bitmap) {
-            mResInfos.add(ResInfo.build()
+            add(-1, url, bitmap);
+        }
+
+        /**
+         * 放入一张图片的加载结果, 同一位置只接受第一次结果
+         *
+         * @param slot 请求时的位置, 小于0时放入第一个空位
+         */
+        public void add(int slot, String url, Bitmap bitmap) {
+            if (mCancelled) {
+                return;
+            }
+
+            ResInfo res = ResInfo.build()
                                  .setUrl(url)
-                                 .setBitmap(bitmap));
+                                 .setBitmap(bitmap);
+            if (slot >= 0) {
+                if (slot >= mSlots.length() || !mSlots.compareAndSet(slot, null, res)) {
+                    return;
+                }
+            } else if (!fillEmpty(res)) {
+                return;
+            }
 
-            mCount++;
-            if (mCount >= mMax) {
-                ready(mResInfos);
+            mCount.incrementAndGet();
+            requestDeliver();
+        }
+
+        /**
+         * 来源收回了这张图片, 使用它的位置换成不带图片的结果, 控件也不再绘制它
+         */
+        public void release(final Bitmap bitmap) {
+            if (mCancelled) {
+                return;
+            }
+
+            for (int i = 0, length = mSlots.length(); i < length; i++) {
+                ResInfo res = mSlots.get(i);
+                if (res != null && res.getBitmap() == bitmap) {
+                    mSlots.compareAndSet(i, res, res.copy()
+                                                    .setBitmap(null));
+                }
+            }
+            RenderExecutor.runOnMain(new Runnable() {
+                @Override
+                public void run() {
+                    mView.onLoadReleased(mGeneration, bitmap);
+                }
+            });
+        }
+
+        private void requestDeliver() {
+            if (mDeliverPending.compareAndSet(false, true)) {
+                RenderExecutor.postToMain(mDeliver);
+            }
+        }
+
+        private boolean fillEmpty(ResInfo res) {
+            for (int i = 0, length = mSlots.length(); i < length; i++) {
+                if (mSlots.compareAndSet(i, null, res)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void deliver() {
+            if (mCancelled || mView.getLoadGeneration() != mGeneration) {
+                return;
+            }
+
+            int length = mSlots.length();
+            int filled = 0;
+            ArrayList<ResInfo> resInfos = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                ResInfo res = mSlots.get(i);
+                if (res != null) {
+                    filled++;
+                }
+                resInfos.add(res != null ? res : obtainPlaceholder());
+            }
+            mDelivered = filled == length;
+            ready(resInfos);
+        }
+
+        /**
+         * 占位的子元素, 所有空位共用
+         */
+        private ResInfo obtainPlaceholder() {
+            if (mPlaceholderRes == null) {
+                Bitmap bitmap = null;
+                if (mPlaceholder instanceof BitmapDrawable || (mPlaceholder != null
+                        && mPlaceholder.getIntrinsicWidth() > 0 && mPlaceholder.getIntrinsicHeight() > 0)) {
+                    bitmap = BitmapMan.toBitmap(mPlaceholder);
+                }
+                mPlaceholderRes = bitmap != null ? ResInfo.build()
+                                                          .setBitmap(bitmap) : ResInfo.build()
+                                                                                      .setForceText(true);
             }
+            return mPlaceholderRes;
         }
     }
 }
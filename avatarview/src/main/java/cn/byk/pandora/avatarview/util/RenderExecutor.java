@@ -0,0 +1,109 @@
+package cn.byk.pandora.avatarview.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 后台合成使用的线程池, 线程数有上限, 并提供切回主线程的入口
+ * <p>
+ * 本地图片解码使用单独的线程池, 读取文件时不会占住合成线程
+ */
+public class RenderExecutor {
+
+    private static final int CPU_COUNT = Runtime.getRuntime()
+                                                .availableProcessors();
+
+    /**
+     * 线程数上限, 留出CPU给主线程和渲染线程
+     */
+    private static final int MAX_THREADS = Math.max(1, Math.min(2, CPU_COUNT - 1));
+
+    /**
+     * 解码线程数上限, 解码主要受IO限制, 不需要更多线程
+     */
+    private static final int MAX_DECODE_THREADS = 2;
+
+    private static final ThreadPoolExecutor sExecutor;
+    private static final ThreadPoolExecutor sDecodeExecutor;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    static {
+        sExecutor = newExecutor(MAX_THREADS, "AvatarRender-");
+        sDecodeExecutor = newExecutor(MAX_DECODE_THREADS, "AvatarDecode-");
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads, final String namePrefix) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, namePrefix + mCount.incrementAndGet());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 提交一个后台任务, 返回的Future可用于取消尚未开始的任务
+     */
+    public static Future<?> submit(Runnable task) {
+        return sExecutor.submit(task);
+    }
+
+    /**
+     * 提交一个本地图片解码任务
+     */
+    public static Future<?> submitDecode(Runnable task) {
+        return sDecodeExecutor.submit(task);
+    }
+
+    /**
+     * 取消{@link #submit}或{@link #submitDecode}返回的任务, 尚未开始的任务同时从队列中移除,
+     * 快速滑动时被取消的任务不会堆积在队列里. 已经开始的任务不会被中断
+     */
+    public static void cancel(Future<?> future) {
+        if (future == null || !future.cancel(false) || !(future instanceof Runnable)) {
+            return;
+        }
+        Runnable task = (Runnable) future;
+        if (!sExecutor.remove(task)) {
+            sDecodeExecutor.remove(task);
+        }
+    }
+
+    /**
+     * 切回主线程执行
+     */
+    public static void postToMain(Runnable task) {
+        sMainHandler.post(task);
+    }
+
+    /**
+     * 已经在主线程时直接执行, 否则切回主线程
+     */
+    public static void runOnMain(Runnable task) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            task.run();
+        } else {
+            sMainHandler.post(task);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package cn.byk.pandora.avatarview.util;
+
+import android.graphics.Matrix;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.util.LongSparseArray;
+import android.util.SparseArray;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 图形模板注册表
+ * <p>
+ * 每种图形只在单位尺寸([0,1]x[0,1])下构造一次路径, 绘制时通过共用的矩阵缩放平移到目标区域, 不再每次重新计算顶点.
+ * 除内置的五角星, 圆形, 椭圆外, 还支持任意边数的正多边形和任意角数的星形, 圆角矩形按具体尺寸缓存
+ */
+public class ShapeTemplates {
+
+    /**
+     * 与原有五角星一致的顶点顺序 E --> B --> D --> A --> C
+     */
+    public static final Path STAR;
+
+    public static final Path CIRCLE;
+
+    public static final Path OVAL;
+
+    /**
+     * 圆角矩形按具体尺寸缓存的上限
+     */
+    private static final int MAX_ROUND_RECT = 32;
+
+    private static final Map<String, Path> sTemplates = new HashMap<>();
+
+    /**
+     * 按边数缓存的正多边形, 查询时不拼接字符串也不装箱
+     */
+    private static final SparseArray<Path> sPolygons = new SparseArray<>();
+
+    /**
+     * 按角数和内圈比值缓存的星形, key见{@link #starKey(int, float)}
+     */
+    private static final LongSparseArray<Path> sStars = new LongSparseArray<>();
+
+    /**
+     * 圆角矩形按 宽, 高, 圆角x, 圆角y 四个float直接比较, 缓存满时替换最久未使用的
+     */
+    private static final float[] sRoundRectKeys = new float[MAX_ROUND_RECT * 4];
+    private static final Path[] sRoundRects = new Path[MAX_ROUND_RECT];
+    private static final long[] sRoundRectUsed = new long[MAX_ROUND_RECT];
+    private static long sRoundRectClock;
+
+    private static final ThreadLocal<Matrix> MATRIX = new ThreadLocal<Matrix>() {
+        @Override
+        protected Matrix initialValue() {
+            return new Matrix();
+        }
+    };
+
+    static {
+        STAR = new Path();
+        STAR.moveTo(0f, 0.365f);       //E
+        STAR.lineTo(1f, 0.365f);       //B
+        STAR.lineTo(0.19f, 0.95f);     //D
+        STAR.lineTo(0.5f, 0f);         //A
+        STAR.lineTo(0.81f, 0.95f);     //C
+        STAR.close();
+
+        CIRCLE = new Path();
+        CIRCLE.addCircle(0.5f, 0.5f, 0.5f, Path.Direction.CW);
+
+        OVAL = new Path();
+        OVAL.addOval(new RectF(0f, 0f, 1f, 1f), Path.Direction.CW);
+    }
+
+    /**
+     * 注册一个自定义的单位尺寸图形
+     *
+     * @param name     图形名称
+     * @param unitPath 在[0,1]x[0,1]范围内定义的路径, 注册后不应再修改
+     */
+    public static void register(String name, Path unitPath) {
+        synchronized (sTemplates) {
+            sTemplates.put(name, unitPath);
+        }
+    }
+
+    /**
+     * 获取已注册的图形模板
+     */
+    public static Path get(String name) {
+        synchronized (sTemplates) {
+            return sTemplates.get(name);
+        }
+    }
+
+    /**
+     * 正多边形模板, 第一个顶点朝上
+     *
+     * @param sides 边数, 不小于3
+     */
+    public static Path polygon(int sides) {
+        if (sides < 3) {
+            throw new IllegalArgumentException("多边形的边数不能小于3");
+        }
+
+        synchronized (sPolygons) {
+            Path path = sPolygons.get(sides);
+            if (path == null) {
+                path = new Path();
+                double step = 2 * Math.PI / sides;
+                for (int i = 0; i < sides; i++) {
+                    double angle = i * step - Math.PI / 2;
+                    float x = (float) (0.5 + 0.5 * Math.cos(angle));
+                    float y = (float) (0.5 + 0.5 * Math.sin(angle));
+                    if (i == 0) {
+                        path.moveTo(x, y);
+                    } else {
+                        path.lineTo(x, y);
+                    }
+                }
+                path.close();
+                sPolygons.put(sides, path);
+            }
+            return path;
+        }
+    }
+
+    /**
+     * N角星模板, 第一个角朝上
+     *
+     * @param points     角的数量, 不小于3
+     * @param innerRatio 内圈顶点半径与外圈半径的比值, 取值(0,1)
+     */
+    public static Path star(int points, float innerRatio) {
+        if (points < 3) {
+            throw new IllegalArgumentException("星形的角数不能小于3");
+        }
+        if (innerRatio <= 0 || innerRatio >= 1) {
+            throw new IllegalArgumentException("内圈半径比值只能在0到1之间");
+        }
+
+        long key = starKey(points, innerRatio);
+        synchronized (sStars) {
+            Path path = sStars.get(key);
+            if (path == null) {
+                path = new Path();
+                double step = Math.PI / points;
+                for (int i = 0; i < points * 2; i++) {
+                    double radius = (i & 1) == 0 ? 0.5 : 0.5 * innerRatio;
+                    double angle = i * step - Math.PI / 2;
+                    float x = (float) (0.5 + radius * Math.cos(angle));
+                    float y = (float) (0.5 + radius * Math.sin(angle));
+                    if (i == 0) {
+                        path.moveTo(x, y);
+                    } else {
+                        path.lineTo(x, y);
+                    }
+                }
+                path.close();
+                sStars.put(key, path);
+            }
+            return path;
+        }
+    }
+
+    /**
+     * 高32位为角数, 低32位为内圈比值的位表示, 不同参数的key一定不同
+     */
+    private static long starKey(int points, float innerRatio) {
+        return ((long) points << 32) | (Float.floatToIntBits(innerRatio) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 圆角矩形缩放后圆角会变形, 按具体尺寸缓存, 已经是目标尺寸, 绘制时只需平移
+     */
+    public static Path roundRect(float width, float height, float cornerX, float cornerY) {
+        synchronized (sRoundRects) {
+            long now = ++sRoundRectClock;
+            int eldest = 0;
+            for (int i = 0; i < MAX_ROUND_RECT; i++) {
+                Path path = sRoundRects[i];
+                if (path == null) {
+                    eldest = i;
+                    break;
+                }
+                int base = i * 4;
+                if (sRoundRectKeys[base] == width && sRoundRectKeys[base + 1] == height
+                        && sRoundRectKeys[base + 2] == cornerX && sRoundRectKeys[base + 3] == cornerY) {
+                    sRoundRectUsed[i] = now;
+                    return path;
+                }
+                if (sRoundRectUsed[i] < sRoundRectUsed[eldest]) {
+                    eldest = i;
+                }
+            }
+
+            Path path = new Path();
+            path.addRoundRect(new RectF(0, 0, width, height), cornerX, cornerY, Path.Direction.CW);
+            int base = eldest * 4;
+            sRoundRectKeys[base] = width;
+            sRoundRectKeys[base + 1] = height;
+            sRoundRectKeys[base + 2] = cornerX;
+            sRoundRectKeys[base + 3] = cornerY;
+            sRoundRects[eldest] = path;
+            sRoundRectUsed[eldest] = now;
+            return path;
+        }
+    }
+
+    /**
+     * 把单位模板缩放平移到目标区域, 结果写入dst
+     *
+     * @param template 单位尺寸模板
+     * @param left     目标区域左上角x
+     * @param top      目标区域左上角y
+     * @param width    目标区域宽度
+     * @param height   目标区域高度
+     * @param dst      接收结果的路径, 可以在多次绘制间复用
+     */
+    public static void transform(Path template, float left, float top, float width, float height, Path dst) {
+        Matrix matrix = MATRIX.get();
+        matrix.setScale(width, height);
+        matrix.postTranslate(left, top);
+        template.transform(matrix, dst);
+    }
+}